@@ -1,34 +1,92 @@
 import java.io.IOException;
 import java.net.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
-import java.util.ArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 public class Chat implements Runnable{
-    /* OVERVIEW: modella la chat del progetto usata dagli utenti
-     *              - username: nome dell'utente
+    /* OVERVIEW: modella la chat del progetto usata dagli utenti; i messaggi vengono ricevuti da un
+     *           ChatReceiver condiviso da tutte le chat oppure, se eseguita da un proprio thread, dalla
+     *           chat stessa con una MulticastSocket, mentre vengono inviati al server sulla connessione TCP.
+     *           Ogni messaggio ha un numero di sequenza assegnato dal server: quando i numeri ricevuti
+     *           non sono consecutivi (o la chat non ha ancora recuperato i messaggi precedenti alla
+     *           join_chat) il client recupera quelli mancanti con il comando chat_history.
+     *           Un datagramma contiene un solo messaggio oppure più notifiche di sistema raccolte dal server
+     *           (vedi MulticastSender del server), ognuna con il proprio numero di sequenza, ed è preceduto
+     *           dall'indirizzo del gruppo a cui è destinato: i datagrammi di altri gruppi vengono ignorati.
+     *           Il server invia i datagrammi di una chat nell'ordine dei numeri di sequenza, quindi un
+     *           datagramma che non inizia dopo l'ultimo ricevuto è un duplicato (lo stesso datagramma ricevuto
+     *           da più socket, vedi ChatReceiver) o è arrivato in ritardo, e viene ignorato prima di occupare
+     *           una casella: nel secondo caso i suoi messaggi vengono recuperati con chat_history.
+     *           I datagrammi ricevuti vengono copiati così come sono in una casella libera di un buffer
+     *           circolare limitato, con un solo produttore (il thread che riceve) e un solo consumatore
+     *           (il thread che legge i messaggi), quindi senza lock; le caselle vengono allocate al primo
+     *           utilizzo e poi riutilizzate, e i messaggi vengono decodificati direttamente dalle caselle
+     *           solo quando l'utente li legge. Se il buffer è pieno il datagramma viene scartato: il
+     *           messaggio verrà recuperato dal server alla lettura successiva, come ogni altro messaggio perso
      *              - group & port: indirizzo multicast della chat
-     *              - multicastSocket: socket della chat
-     *              - unreadMessages: insieme dei messaggi non ancora letti dall'utente
-     *              - cancel: flag che indica se il progetto è stato cancellato */
+     *              - groupId: indirizzo del gruppo come intero, così come compare nei datagrammi
+     *              - multicastSocket: socket della chat, se eseguita da un proprio thread
+     *              - inbox & lengths: caselle del buffer circolare con la lunghezza dei datagrammi che contengono
+     *              - head: indice del prossimo datagramma da leggere (scritto solo dal consumatore)
+     *              - tail: indice della prossima casella da riempire (scritto solo dal produttore)
+     *              - dropped: numero di datagrammi scartati perché il buffer era pieno
+     *              - received: primo numero di sequenza dell'ultimo datagramma ricevuto (usato solo dal produttore)
+     *              - end: indice fino al quale vengono letti i datagrammi, fissato da missingAfter
+     *              - recovered: numero di datagrammi scartati i cui messaggi sono già stati recuperati, o
+     *                  richiesti, con chat_history
+     *              - lastRead: numero di sequenza dell'ultimo messaggio letto dall'utente
+     *              - synced: false finché la chat non ha recuperato i messaggi precedenti alla join_chat
+     *              - cancel: flag che indica se il progetto è stato cancellato
+     *              - deleted: true se all'utente è già stato mostrato che il progetto è stato cancellato */
 
-    private final String username;
+    //tipi di datagramma: un singolo messaggio o più messaggi (vedi MulticastSender del server)
+    private final static byte MESSAGE = 1;
+    private final static byte BATCH = 2;
+    private final static int GROUP_END = 1 + Integer.BYTES;
+    private final static int HEADER_DIMENSION = GROUP_END + Long.BYTES;
+    private final static int BATCH_HEADER_DIMENSION = GROUP_END + Short.BYTES;
+    private final static int EVENT_HEADER_DIMENSION = Long.BYTES + Short.BYTES;
+    private final static byte[] CLOSE = "System: close".getBytes(StandardCharsets.UTF_8);
+    private final static String DELETED = "The project has been deleted";
+
+    private final static int INBOX_DIMENSION = 256;
+    private final static int SLOT_DIMENSION = 2048;
+    private final static int BUFFER_DIMENSION = 64 * 1024;
 
     private final InetAddress group;
     private final int port;
+    private final int groupId;
     private MulticastSocket multicastSocket;
 
-    private final ArrayList<String> unreadMessages;
+    private final byte[][] inbox;
+    private final int[] lengths;
+    private final AtomicLong head;
+    private final AtomicLong tail;
+    private final AtomicLong dropped;
+    private long received;
+
+    private long end;
+    private long recovered;
+    private long lastRead;
+    private boolean synced;
     private final AtomicBoolean cancel;
+    private boolean deleted;
 
                                         //METODO COSTRUTTORE
 
-    public Chat(String username, String multicastAddress, int port) throws UnknownHostException {
-        this.username = username;
+    public Chat(String multicastAddress, int port) throws UnknownHostException {
         this.group = InetAddress.getByName(multicastAddress);
         this.port = port;
+        this.groupId = ByteBuffer.wrap(group.getAddress()).getInt();
         cancel = new AtomicBoolean(false);
-        unreadMessages = new ArrayList<>();
+        inbox = new byte[INBOX_DIMENSION][];
+        lengths = new int[INBOX_DIMENSION];
+        head = new AtomicLong();
+        tail = new AtomicLong();
+        dropped = new AtomicLong();
     }
 
     //-------------------------------------------------------------------------------------//
@@ -42,9 +100,129 @@ public class Chat implements Runnable{
 
     }
 
-    //EFFECTS: chiude la multicastSocket
+    public InetAddress getGroup() { return group; }
+
+    public int getPort() { return port; }
+
+    public int getGroupId() { return groupId; }
+
+    //RETURN: l'indirizzo del gruppo a cui è destinato il datagramma (dalla posizione al limite di <datagram>), 0 se non è valido
+    public static int groupOf(ByteBuffer datagram) {
+        if (datagram.remaining() < GROUP_END) return 0;
+        return datagram.getInt(datagram.position() + 1);
+    }
+
+    //RETURN: il numero di datagrammi scartati perché il buffer dei messaggi non letti era pieno
+    public long getDropped() { return dropped.get(); }
+
+    //EFFECTS: chiude la multicastSocket, se il thread della chat l'ha già aperta
     public void close(){
-        multicastSocket.close();
+        if (multicastSocket != null) multicastSocket.close();
+    }
+
+    /* REQUIRES: datagram != null (da invocare solo dal thread che riceve i messaggi della chat)
+     * EFFECTS: copia il datagramma (dalla posizione al limite di <datagram>) in una casella libera del buffer
+     *          dei messaggi non letti, o lo scarta se il buffer è pieno; i datagrammi non validi, destinati
+     *          a un altro gruppo o già ricevuti vengono ignorati. Se il messaggio indica che il progetto è stato cancellato imposta il flag cancel
+     * RETURN: false se la chat non deve ricevere altri messaggi, true altrimenti */
+    public boolean deliver(ByteBuffer datagram) {
+        int length = datagram.remaining();
+        if (!isValid(datagram) || groupOf(datagram) != groupId) return true;
+        long sequence = firstSequence(datagram);
+        if (sequence <= received) return true;
+        received = sequence;
+        boolean close = isClose(datagram);
+
+        long index = tail.get();
+        if (index - head.get() == INBOX_DIMENSION) dropped.incrementAndGet();
+        else {
+            int slot = (int) (index % INBOX_DIMENSION);
+            if (inbox[slot] == null || inbox[slot].length < length) inbox[slot] = new byte[Math.max(SLOT_DIMENSION, length)];
+            datagram.get(inbox[slot], 0, length);
+            lengths[slot] = length;
+            //pubblica la casella al consumatore
+            tail.lazySet(index + 1);
+        }
+        if (!close) return true;
+        cancel.set(true);
+        return false;
+    }
+
+    /* EFFECTS: fissa i datagrammi che verranno letti dalla prossima readMessages (quelli ricevuti finora)
+     *          e restituisce il numero di sequenza dopo il quale mancano dei messaggi, da recuperare con
+     *          chat_history, oppure -1 se non ne manca nessuno tra quelli ricevuti
+     *          (da invocare solo dal thread che legge i messaggi) */
+    public long missingAfter() {
+        end = tail.get();
+        if (!synced) return lastRead;
+        //i datagrammi scartati non lasciano per forza un buco nei numeri ricevuti (ad esempio se sono gli ultimi)
+        long discarded = dropped.get();
+        if (discarded > recovered) {
+            recovered = discarded;
+            return lastRead;
+        }
+        long expected = lastRead + 1;
+        for (long index = head.get(); index < end; index++) {
+            byte[] datagram = inbox[(int) (index % INBOX_DIMENSION)];
+            int event = firstEvent(datagram);
+            for (int i = eventCount(datagram); i > 0; i--) {
+                long sequence = readLong(datagram, event);
+                event = eventEnd(datagram, lengths[(int) (index % INBOX_DIMENSION)], event);
+                if (sequence < expected) continue;
+                if (sequence != expected) return lastRead;
+                expected++;
+            }
+        }
+        //la cancellazione del progetto è arrivata ma il relativo datagramma è stato scartato
+        if (cancel.get() && !deleted && !closeReceived(head.get(), end)) return lastRead;
+        return -1;
+    }
+
+    /* REQUIRES: reader != null (da invocare solo dal thread che legge i messaggi, dopo missingAfter)
+     * EFFECTS: passa a <reader>, in ordine di numero di sequenza, i messaggi non letti ricevuti fino
+     *          all'invocazione di missingAfter e quelli recuperati con chat_history (<history>, che può
+     *          essere null), uno per riga nella forma "<numero di sequenza> <messaggio>"; le righe in
+     *          un'altra forma vengono ignorate. Libera le caselle lette del buffer
+     * RETURN: il numero di messaggi passati a <reader> */
+    public int readMessages(String history, Consumer<String> reader){
+        int read = 0;
+        int line = 0;
+        long index = head.get();
+        for (; index < end; index++) {
+            int slot = (int) (index % INBOX_DIMENSION);
+            byte[] datagram = inbox[slot];
+            int event = firstEvent(datagram);
+            for (int i = eventCount(datagram); i > 0; i--) {
+                long sequence = readLong(datagram, event);
+                int text = textStart(datagram, event);
+                event = eventEnd(datagram, lengths[slot], event);
+                //i messaggi recuperati precedenti a quello del datagramma vengono letti per primi
+                if (history != null) {
+                    while (line < history.length()) {
+                        int next = nextLine(history, line);
+                        long recovered = lineSequence(history, line, next);
+                        if (recovered >= sequence) break;
+                        if (recovered > lastRead) read += emit(recovered, history.substring(history.indexOf(' ', line) + 1, lineEnd(history, next)), reader);
+                        line = next;
+                    }
+                }
+                if (sequence > lastRead) read += emit(sequence, new String(datagram, text, event - text, StandardCharsets.UTF_8), reader);
+            }
+        }
+        //libera le caselle lette
+        head.lazySet(index);
+
+        if (history != null) {
+            while (line < history.length()) {
+                int next = nextLine(history, line);
+                long recovered = lineSequence(history, line, next);
+                if (recovered > lastRead) read += emit(recovered, history.substring(history.indexOf(' ', line) + 1, lineEnd(history, next)), reader);
+                line = next;
+            }
+            synced = true;
+        }
+        if (cancel.get() && !deleted && head.get() == tail.get()) read += emit(lastRead, DELETED, reader);
+        return read;
     }
 
     @Override
@@ -54,24 +232,17 @@ public class Chat implements Runnable{
         try {
             multicastSocket = new MulticastSocket(port);
             multicastSocket.joinGroup(group);
-            byte[] buffer = new byte[1024];
+            byte[] buffer = new byte[BUFFER_DIMENSION];
             DatagramPacket receivePacket = new DatagramPacket(buffer, buffer.length);
+            ByteBuffer datagram = ByteBuffer.wrap(buffer);
 
             while (!cancel.get()) {
 
                 multicastSocket.receive(receivePacket);
-                String message = new String(receivePacket.getData(), 0, receivePacket.getLength(), StandardCharsets.UTF_8);
-                if (message.equals("System: close")) {
-                    cancel.set(true);
-                    break;
-                }
-                synchronized (unreadMessages) {
-                    unreadMessages.add(message);
-                }
-            }
-            synchronized (unreadMessages) {
-                unreadMessages.add("The project has been deleted");
+                datagram.clear().limit(receivePacket.getLength());
+                if (!deliver(datagram)) break;
             }
+            multicastSocket.close();
 
         } catch (SocketException ignored){
         } catch (IOException e) {
@@ -79,26 +250,131 @@ public class Chat implements Runnable{
         }
     }
 
-    //EFFECTS: restituisce i messaggi non letti
-    public ArrayList<String> readMessages(){
-        ArrayList<String> messages;
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI AUSILIARI
 
-        synchronized (unreadMessages){
-            messages = new ArrayList<>(unreadMessages);
-            unreadMessages.clear();
+    //EFFECTS: passa il messaggio a <reader> e aggiorna il numero di sequenza dell'ultimo messaggio letto
+    private int emit(long sequence, String message, Consumer<String> reader) {
+        if (message.equals("System: close")) message = DELETED;
+        if (message.equals(DELETED)) {
+            if (deleted) return 0;
+            deleted = true;
         }
+        reader.accept(message);
+        lastRead = Math.max(lastRead, sequence);
+        return 1;
+    }
 
-        return messages;
+    //restituisce true se tra i datagrammi [from, to) del buffer c'è quello che indica la cancellazione del progetto
+    private boolean closeReceived(long from, long to) {
+        for (long index = from; index < to; index++) {
+            int slot = (int) (index % INBOX_DIMENSION);
+            if (isClose(inbox[slot], lengths[slot])) return true;
+        }
+        return false;
     }
 
-    //EFFECTS: manda un messaggio multicast a tutti i membri del progetto
-    public void sendMessage (String message) throws IOException {
-        try (DatagramSocket socket = new DatagramSocket()){
-            byte[] buffer = (username +": "+ message).getBytes(StandardCharsets.UTF_8);
-            DatagramPacket packetToSend = new DatagramPacket(buffer, buffer.length, group, port);
-            socket.send(packetToSend);
-        } catch (IOException e) {
-            throw new IOException("Impossibile mandare il messaggio");
+    //-------------------------------------------------------------------------------------//
+
+                                        //FUNZIONI AUSILIARIE
+
+    /* EFFECTS: restituisce true se il datagramma (dalla posizione al limite di <datagram>) ha una delle due forme
+     *          inviate dal server: un messaggio, oppure almeno un messaggio che occupano esattamente il datagramma */
+    private static boolean isValid(ByteBuffer datagram) {
+        int start = datagram.position();
+        int length = datagram.remaining();
+        if (length < 1) return false;
+        byte type = datagram.get(start);
+        if (type == MESSAGE) return length >= HEADER_DIMENSION;
+        if (type != BATCH || length < BATCH_HEADER_DIMENSION) return false;
+        int count = datagram.getShort(start + GROUP_END) & 0xFFFF;
+        int event = BATCH_HEADER_DIMENSION;
+        for (int i = 0; i < count; i++) {
+            if (length - event < EVENT_HEADER_DIMENSION) return false;
+            event += EVENT_HEADER_DIMENSION + (datagram.getShort(start + event + Long.BYTES) & 0xFFFF);
+            if (event > length) return false;
+        }
+        return count > 0 && event == length;
+    }
+
+    //restituisce il numero di sequenza del primo messaggio del datagramma valido (dalla posizione al limite di <datagram>)
+    private static long firstSequence(ByteBuffer datagram) {
+        int start = datagram.position();
+        return datagram.getLong(start + (datagram.get(start) == BATCH ? BATCH_HEADER_DIMENSION : GROUP_END));
+    }
+
+    //restituisce il numero di messaggi del datagramma
+    private static int eventCount(byte[] datagram) {
+        return datagram[0] == BATCH ? readShort(datagram, GROUP_END) : 1;
+    }
+
+    //restituisce la posizione del primo messaggio del datagramma (il suo numero di sequenza)
+    private static int firstEvent(byte[] datagram) {
+        return datagram[0] == BATCH ? BATCH_HEADER_DIMENSION : GROUP_END;
+    }
+
+    //restituisce la posizione del testo del messaggio del datagramma che inizia in <event>
+    private static int textStart(byte[] datagram, int event) {
+        return datagram[0] == BATCH ? event + EVENT_HEADER_DIMENSION : event + Long.BYTES;
+    }
+
+    //restituisce la fine del messaggio che inizia in <event> del datagramma lungo <length> byte (l'inizio del successivo)
+    private static int eventEnd(byte[] datagram, int length, int event) {
+        return datagram[0] == BATCH ? event + EVENT_HEADER_DIMENSION + readShort(datagram, event + Long.BYTES) : length;
+    }
+
+    //restituisce l'intero big-endian senza segno di due byte in posizione <from>
+    private static int readShort(byte[] datagram, int from) {
+        return ((datagram[from] & 0xFF) << 8) | (datagram[from + 1] & 0xFF);
+    }
+
+    //restituisce il long big-endian in posizione <from>
+    private static long readLong(byte[] datagram, int from) {
+        long value = 0;
+        for (int i = from; i < from + Long.BYTES; i++) {
+            value = (value << 8) | (datagram[i] & 0xFF);
+        }
+        return value;
+    }
+
+    //restituisce true se il datagramma (dalla posizione al limite di <datagram>) indica la cancellazione del progetto
+    private static boolean isClose(ByteBuffer datagram) {
+        if (datagram.remaining() != HEADER_DIMENSION + CLOSE.length || datagram.get(datagram.position()) != MESSAGE) return false;
+        for (int i = 0; i < CLOSE.length; i++) {
+            if (datagram.get(datagram.position() + HEADER_DIMENSION + i) != CLOSE[i]) return false;
+        }
+        return true;
+    }
+
+    //restituisce true se il datagramma lungo <length> byte indica la cancellazione del progetto
+    private static boolean isClose(byte[] datagram, int length) {
+        if (length != HEADER_DIMENSION + CLOSE.length || datagram[0] != MESSAGE) return false;
+        for (int i = 0; i < CLOSE.length; i++) {
+            if (datagram[HEADER_DIMENSION + i] != CLOSE[i]) return false;
+        }
+        return true;
+    }
+
+    //restituisce l'inizio della riga successiva a quella che inizia in <from>
+    private static int nextLine(String text, int from) {
+        int newLine = text.indexOf('\n', from);
+        return newLine < 0 ? text.length() : newLine + 1;
+    }
+
+    //restituisce la fine della riga che precede l'inizio di riga <next>, escluso il carattere di fine riga
+    private static int lineEnd(String text, int next) {
+        return next > 0 && text.charAt(next - 1) == '\n' ? next - 1 : next;
+    }
+
+    //restituisce il numero di sequenza della riga [from, to) di chat_history, o -1 se la riga non è valida
+    private static long lineSequence(String text, int from, int to) {
+        int space = text.indexOf(' ', from);
+        if (space <= from || space >= to) return -1;
+        try {
+            return Long.parseLong(text.substring(from, space));
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
 
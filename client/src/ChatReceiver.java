@@ -0,0 +1,239 @@
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.net.StandardProtocolFamily;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.MembershipKey;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+public class ChatReceiver implements Runnable {
+
+    /* OVERVIEW: riceve i messaggi di tutte le chat del client con un unico thread e pochi canali condivisi:
+     *           ogni canale non bloccante, legato all'indirizzo wildcard della porta (tutti i progetti usano la
+     *           stessa porta), è iscritto ai gruppi multicast di più chat, fino al limite di iscrizioni per socket
+     *           del sistema operativo (GROUPS_PER_CHANNEL), quindi il numero di thread è costante e il numero di
+     *           socket cresce di uno ogni GROUPS_PER_CHANNEL chat seguite.
+     *           Un canale riceve i datagrammi di tutti i gruppi sulla porta, anche di quelli a cui è iscritto
+     *           un altro socket della macchina; ogni datagramma riporta nell'intestazione l'indirizzo del gruppo
+     *           a cui è destinato (vedi MulticastSender del server) e viene consegnato solo alla chat di quel gruppo.
+     *           Su Linux ogni canale riceve anche i datagrammi dei gruppi a cui sono iscritti gli altri canali, quindi
+     *           con più canali lo stesso datagramma arriva più volte: le copie vengono scartate dalla chat in base
+     *           al numero di sequenza, prima di occupare una casella dei messaggi non letti (vedi Chat.deliver)
+     *              - selector: selettore sul quale sono registrati i canali
+     *              - channels: canali aperti per ogni porta, usati solo da join e leave (sul monitor del receiver)
+     *              - pending: canali non ancora registrati sul selettore
+     *              - routes: associazione <gruppo, iscrizione> delle chat seguite, usata dal thread del
+     *                  selettore per smistare i datagrammi
+     *              - buffer: buffer in cui vengono ricevuti i datagrammi, poi copiati dalla chat */
+
+    private final static int BUFFER_DIMENSION = 64 * 1024;
+    //limite predefinito di Linux alle iscrizioni multicast di un socket (net.ipv4.igmp_max_memberships)
+    private final static int GROUPS_PER_CHANNEL = 20;
+
+    private final Selector selector;
+    private final HashMap<Integer, ArrayList<Channel>> channels;
+    private final ConcurrentLinkedQueue<DatagramChannel> pending;
+    private final ConcurrentHashMap<Integer, Membership> routes;
+    private final ByteBuffer buffer;
+
+                                        //METODO COSTRUTTORE
+
+    /* EFFECTS: apre il selettore e avvia il thread che riceve i messaggi
+     * THROWS: IOException se non è possibile aprire il selettore */
+    public ChatReceiver() throws IOException {
+        this.selector = Selector.open();
+        this.channels = new HashMap<>();
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.routes = new ConcurrentHashMap<>();
+        this.buffer = ByteBuffer.allocateDirect(BUFFER_DIMENSION);
+
+        Thread thread = new Thread(this, "chat-receiver");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI D'ISTANZA
+
+    /* REQUIRES: chat != null
+     * EFFECTS: iscrive un canale della porta di <chat> con iscrizioni libere (aprendolo se necessario) al
+     *          gruppo multicast della chat, che da quel momento riceve i messaggi; se il gruppo apparteneva a
+     *          un'altra chat (di un progetto cancellato, il cui indirizzo è stato riassegnato) la sostituisce
+     * THROWS: IOException se non è possibile aprire il canale o iscriverlo al gruppo */
+    public synchronized void join(Chat chat) throws IOException {
+        if (chat == null) throw new NullPointerException("Invalid chat");
+        Membership old = routes.remove(chat.getGroupId());
+        if (old != null) drop(old);
+
+        InetAddress group = chat.getGroup();
+        NetworkInterface networkInterface = multicastInterface(group, chat.getPort());
+        ArrayList<Channel> portChannels = channels.computeIfAbsent(chat.getPort(), port -> new ArrayList<>());
+        for (Channel channel : portChannels) {
+            if (channel.groups >= GROUPS_PER_CHANNEL) continue;
+            try {
+                routes.put(chat.getGroupId(), new Membership(chat, channel, channel.join(group, networkInterface)));
+                return;
+            } catch (SocketException e) {
+                //il sistema operativo ha un limite più basso: il canale viene considerato pieno
+                channel.groups = GROUPS_PER_CHANNEL;
+            }
+        }
+        Channel channel = new Channel(openChannel(chat.getPort()));
+        try {
+            routes.put(chat.getGroupId(), new Membership(chat, channel, channel.join(group, networkInterface)));
+        } catch (IOException e) {
+            channel.channel.close();
+            throw e;
+        }
+        portChannels.add(channel);
+        pending.add(channel.channel);
+        selector.wakeup();
+    }
+
+    /* REQUIRES: chat != null
+     * EFFECTS: smette di ricevere i messaggi di <chat> e ne lascia il gruppo multicast */
+    public synchronized void leave(Chat chat) {
+        if (chat == null) throw new NullPointerException("Invalid chat");
+        Membership membership = routes.get(chat.getGroupId());
+        //il gruppo potrebbe essere già passato alla chat di un altro progetto
+        if (membership == null || membership.chat != chat) return;
+        routes.remove(chat.getGroupId());
+        drop(membership);
+    }
+
+    @Override
+    //EFFECTS: consegna alle chat i datagrammi ricevuti sui canali
+    public void run() {
+        try {
+            while (true) {
+                selector.select(this::handleKey);
+                registerPending();
+            }
+        } catch (IOException | ClosedSelectorException e) {
+            System.out.println("Impossibile ricevere i messaggi delle chat");
+        }
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI AUSILIARI
+
+    //EFFECTS: lascia il gruppo dell'iscrizione, liberando un'iscrizione del suo canale (da invocare sul monitor del receiver)
+    private static void drop(Membership membership) {
+        membership.key.drop();
+        membership.channel.groups--;
+    }
+
+    //EFFECTS: registra sul selettore i canali in attesa
+    private void registerPending() {
+        DatagramChannel channel;
+        while ((channel = pending.poll()) != null) {
+            try {
+                channel.register(selector, SelectionKey.OP_READ);
+            } catch (IOException e) {
+                System.out.println("Impossibile ricevere i messaggi delle chat");
+            }
+        }
+    }
+
+    //EFFECTS: riceve tutti i datagrammi disponibili sul canale e li consegna alle chat dei gruppi a cui sono destinati
+    private void handleKey(SelectionKey key) {
+        DatagramChannel channel = (DatagramChannel) key.channel();
+        try {
+            while (true) {
+                buffer.clear();
+                if (channel.receive(buffer) == null) return;
+                buffer.flip();
+                Membership membership = routes.get(Chat.groupOf(buffer));
+                //datagramma non valido o di un gruppo che il client non segue (più)
+                if (membership == null) continue;
+                //il progetto è stato cancellato: la chat non riceverà altri messaggi
+                if (!membership.chat.deliver(buffer)) leave(membership.chat);
+            }
+        } catch (IOException e) {
+            System.out.println("Impossibile ricevere i messaggi delle chat");
+            key.cancel();
+        }
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //FUNZIONI AUSILIARIE
+
+    /* EFFECTS: apre un canale non bloccante legato all'indirizzo wildcard sulla porta indicata, condivisa
+     *          con gli altri socket multicast della macchina
+     * THROWS: IOException se non è possibile aprire il canale */
+    private static DatagramChannel openChannel(int port) throws IOException {
+        DatagramChannel channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        try {
+            channel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+            channel.bind(new InetSocketAddress(port));
+            channel.configureBlocking(false);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        return channel;
+    }
+
+    /* EFFECTS: restituisce l'interfaccia da cui escono i datagrammi diretti al gruppo (quella scelta dal
+     *          sistema operativo), altrimenti la prima interfaccia attiva che supporta il multicast
+     * THROWS: IOException se nessuna interfaccia supporta il multicast */
+    private static NetworkInterface multicastInterface(InetAddress group, int port) throws IOException {
+        try (DatagramSocket socket = new DatagramSocket()) {
+            socket.connect(group, port);
+            NetworkInterface networkInterface = NetworkInterface.getByInetAddress(socket.getLocalAddress());
+            if (networkInterface != null && networkInterface.supportsMulticast()) return networkInterface;
+        } catch (SocketException ignored) {}
+        for (NetworkInterface networkInterface : Collections.list(NetworkInterface.getNetworkInterfaces())) {
+            if (networkInterface.isUp() && networkInterface.supportsMulticast()) return networkInterface;
+        }
+        throw new IOException("No multicast interface available");
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+    //canale condiviso con il numero di gruppi a cui è iscritto
+    private static class Channel {
+        private final DatagramChannel channel;
+        private int groups;
+
+        private Channel(DatagramChannel channel) {
+            this.channel = channel;
+        }
+
+        //iscrive il canale al gruppo (da invocare sul monitor del receiver)
+        private MembershipKey join(InetAddress group, NetworkInterface networkInterface) throws IOException {
+            MembershipKey key = channel.join(group, networkInterface);
+            groups++;
+            return key;
+        }
+    }
+
+    //iscrizione di una chat al suo gruppo multicast, tramite uno dei canali condivisi
+    private static class Membership {
+        private final Chat chat;
+        private final Channel channel;
+        private final MembershipKey key;
+
+        private Membership(Chat chat, Channel channel, MembershipKey key) {
+            this.chat = chat;
+            this.channel = channel;
+            this.key = key;
+        }
+    }
+
+}
@@ -5,6 +5,9 @@ import java.net.UnknownHostException;
 import java.nio.ByteBuffer;
 import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Paths;
 import java.rmi.NoSuchObjectException;
 import java.rmi.NotBoundException;
 import java.rmi.RemoteException;
@@ -13,34 +16,54 @@ import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.NoSuchElementException;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 
 public class ClientWORTH {
 
     /* OVERVIEW: modella il client del servizio WORTH
-     *              - users: collezione che mantiene l'associazione <username, stato>
+     *              - users: collezione che mantiene l'associazione <username, stato>, aggiornata
+     *                  dalle callback del server (vedi NotifyManager)
      *              - remoteRegisterInterface: interfaccia dell'oggetto remoto usato per eseguire
      *                  la registrazione al servizio WORTH
      *              - notifyManager: oggetto che viene esportato per permettere le callback
+     *              - receiver: thread che riceve i messaggi di tutte le chat, creato alla prima join_chat
      *              - stub: stub dell'oggetto remoto  */
 
     private final static int BUFFER_DIMENSION = 1024;
     private final static int REGISTER_PORT = 4567;
     private final static int TCP_PORT = 5678;
+    //con -Dworth.pipelining=true i comandi vengono inviati senza attendere le risposte precedenti
+    private final static boolean PIPELINING = Boolean.getBoolean("worth.pipelining");
+    //con -Dworth.chatThreads=true ogni chat riceve i messaggi con un proprio thread e una propria MulticastSocket
+    private final static boolean CHAT_THREADS = Boolean.getBoolean("worth.chatThreads");
 
-    private final HashMap<String, String> users;
+    private final ConcurrentHashMap<String, String> users;
     private final HashMap<String, Chat> chats;
 
+    //buffer riutilizzati per comunicare con il server
+    private final ByteBuffer replyLength;
+    private ByteBuffer requestBuffer;
+    private ByteBuffer replyBuffer;
+    private PipelinedConnection pipeline;
+
     private RegisterManagerInterface remoteRegisterManager;
     private NotifyManagerInterface stub;
     private NotifyManager notifyManager;
+    private ChatReceiver receiver;
 
                                         //METODO COSTRUTTORE
 
     public ClientWORTH() {
-        this.users = new HashMap<>();
+        this.users = new ConcurrentHashMap<>();
         this.chats = new HashMap<>();
+        this.replyLength = ByteBuffer.allocate(Integer.BYTES);
+        this.requestBuffer = ByteBuffer.allocate(BUFFER_DIMENSION);
+        this.replyBuffer = ByteBuffer.allocate(BUFFER_DIMENSION);
     }
 
     //-------------------------------------------------------------------------------------//
@@ -109,6 +132,7 @@ public class ClientWORTH {
                                         client = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), TCP_PORT));
                                         client.configureBlocking(true);
                                         connected = true;
+                                        if (PIPELINING) pipeline = new PipelinedConnection(client);
                                     }
 
                                     String message = sendCmd(client, cmdLine);
@@ -163,11 +187,12 @@ public class ClientWORTH {
                                     username = null;
                                     logged = false;
                                     for (Chat chat: chats.values()) {
-                                        chat.close();
+                                        closeChat(chat);
                                     }
                                     chats.clear();
                                     connected = false;
                                     client.close();
+                                    pipeline = null;
                                 }
                                 break;
                             }
@@ -292,11 +317,13 @@ public class ClientWORTH {
                                     String message = sendCmd(client, cmdLine);
                                     if (!message.contains("Invalid") && !message.contains("not found") && !message.contains("denied")){
                                         try {
-                                            joinChat(cmd[1], username, message.split(" "));
+                                            joinChat(cmd[1], message.split(" "));
                                             System.out.println("Chat joined");
                                         }catch (UnknownHostException e ){
                                             System.out.println("There is an error with the multicast address");
                                             e.printStackTrace();
+                                        } catch (IOException e){
+                                            System.out.println("Unable to open the multicast channel");
                                         } catch (IllegalArgumentException e){
                                             System.out.println(e.getMessage());
                                         }
@@ -305,12 +332,37 @@ public class ClientWORTH {
                                 }
                                 break;
                             }
+                            case "batch" :{
+                                if (cmd.length != 3) {
+                                    System.out.println("Use: batch <projectName> <fileName>");
+                                } else {
+                                    try {
+                                        String message = sendCmd(client, createBatch(cmd[1], cmd[2]));
+                                        System.out.println(message.trim());
+                                    } catch (NoSuchFileException e) {
+                                        System.out.println("File not found");
+                                    }
+                                }
+                                break;
+                            }
+                            case "run_script" :{
+                                if (cmd.length != 2) {
+                                    System.out.println("Use: run_script <fileName>");
+                                } else {
+                                    try {
+                                        runScript(client, cmd[1]);
+                                    } catch (NoSuchFileException e) {
+                                        System.out.println("File not found");
+                                    }
+                                }
+                                break;
+                            }
                             case "read_msg" :{
                                 if (cmd.length != 2) {
                                     System.out.println("Use: read_msg <projectName>");
                                 } else {
                                     try {
-                                        read_msg(cmd[1]);
+                                        read_msg(client, cmd[1]);
                                     }catch (Exception e){
                                         System.out.println(e.getMessage());
                                     }
@@ -322,7 +374,7 @@ public class ClientWORTH {
                                     System.out.println("Use: send_msg <projectName> <message>");
                                 } else {
                                     try {
-                                        send_msg(cmd[1], createMessage(cmd));
+                                        send_msg(client, cmd[1], createMessage(cmd));
                                     }catch (Exception e){
                                         System.out.println(e.getMessage());
                                     }
@@ -371,25 +423,79 @@ public class ClientWORTH {
 
                                         //FUNZIONE AUSILIARE
 
-    //manda al server il comando inserito da linea di comando e riceve la relativa risposta
-    private static String sendCmd(SocketChannel client, String cmdLine) throws IOException {
-        //invio al server la richiesta e la sua lunghezza
-        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
-        length.putInt(cmdLine.length());
-        length.flip();
-        client.write(length);
-        length.clear();
-
-        ByteBuffer buffer = ByteBuffer.wrap(cmdLine.getBytes(StandardCharsets.UTF_8));
-        client.write(buffer);
-        buffer.clear();
+    /* manda al server il comando inserito da linea di comando e riceve la relativa risposta;
+       i buffer usati per la richiesta e per la risposta vengono riutilizzati tra un comando e l'altro */
+    private String sendCmd(SocketChannel client, String cmdLine) throws IOException {
+        if (pipeline != null) return await(pipeline.submit(cmdLine));
+
+        //invio al server la richiesta preceduta dalla sua lunghezza in byte (non in caratteri)
+        byte[] request = cmdLine.getBytes(StandardCharsets.UTF_8);
+        requestBuffer = ensureCapacity(requestBuffer, Integer.BYTES + request.length);
+        requestBuffer.putInt(request.length).put(request).flip();
+        while (requestBuffer.hasRemaining()) client.write(requestBuffer);
+
+        //ricevo dal server la lunghezza della risposta e poi la risposta stessa
+        replyLength.clear();
+        readFully(client, replyLength);
+        int length = replyLength.getInt(0);
+        if (length < 0) throw new IOException("Invalid reply length");
+
+        replyBuffer = ensureCapacity(replyBuffer, length);
+        replyBuffer.limit(length);
+        readFully(client, replyBuffer);
+
+        return new String(replyBuffer.array(), 0, length, StandardCharsets.UTF_8);
+    }
+
+    /* manda al server i comandi contenuti nel file <fileName>, uno per riga, e ne stampa le risposte;
+       in modalità pipelining i comandi vengono inviati tutti insieme, senza attendere le risposte */
+    private void runScript(SocketChannel client, String fileName) throws IOException {
+        List<String> lines = Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8);
+        ArrayList<CompletableFuture<String>> answers = new ArrayList<>();
+        for (String line : lines) {
+            if (line.trim().isEmpty()) continue;
+            if (pipeline != null) answers.add(pipeline.submit(line.trim()));
+            else System.out.println(sendCmd(client, line.trim()).trim());
+        }
+        for (CompletableFuture<String> answer : answers) {
+            System.out.println(await(answer).trim());
+        }
+    }
+
+    /* crea un'unica richiesta con le operazioni add_card e move_card contenute nel file <fileName>,
+       una per riga nella forma "add_card <cardName> <description>" o "move_card <cardName> <startingList> <destinationList>" */
+    private static String createBatch(String projectName, String fileName) throws IOException {
+        StringBuilder batch = new StringBuilder("batch ").append(projectName);
+        for (String line : Files.readAllLines(Paths.get(fileName), StandardCharsets.UTF_8)) {
+            if (!line.trim().isEmpty()) batch.append('\n').append(line.trim());
+        }
+        return batch.toString();
+    }
 
-        //ricevo la risposta dal server
-        ByteBuffer reply = ByteBuffer.allocate(BUFFER_DIMENSION);
-        client.read(reply);
-        reply.flip();
+    //attende la risposta di un comando inviato in modalità pipelining
+    private static String await(CompletableFuture<String> answer) throws IOException {
+        try {
+            return answer.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the server");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    //legge dal canale finché il buffer non è pieno
+    private static void readFully(SocketChannel client, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (client.read(buffer) < 0) throw new IOException("Connection closed by the server");
+        }
+    }
 
-        return new String(reply.array(),StandardCharsets.UTF_8);
+    //restituisce un buffer vuoto di capacità almeno <capacity>, riusando <buffer> se è abbastanza grande
+    private static ByteBuffer ensureCapacity(ByteBuffer buffer, int capacity) {
+        if (buffer.capacity() < capacity) return ByteBuffer.allocate(Math.max(capacity, 2 * buffer.capacity()));
+        buffer.clear();
+        return buffer;
     }
 
     private static void help (){
@@ -411,51 +517,59 @@ public class ClientWORTH {
         System.out.printf("%-68s\t%s"+ System.lineSeparator(), "join_chat <projectName>", "join the project's chat");
         System.out.printf("%-68s\t%s"+ System.lineSeparator(), "receive <projectName>", "receive the unread messages of the project's chat");
         System.out.printf("%-68s\t%s"+ System.lineSeparator(), "send_msg <projectName> <message>", "send a message to the project's chat");
+        System.out.printf("%-68s\t%s"+ System.lineSeparator(), "batch <projectName> <fileName>", "add and move the cards listed in a file with a single request");
+        System.out.printf("%-68s\t%s"+ System.lineSeparator(), "run_script <fileName>", "send the commands listed in a file, one per line");
         System.out.printf("%-68s\t%s"+ System.lineSeparator(), "exit", "quit");
     }
 
-    //EFFECTS: crea una nuova chat e avvia il thread demone che si occupa della ricezione dei messaggi
-    private void joinChat (String projectName, String username, String[] address) throws UnknownHostException {
+    //EFFECTS: crea una nuova chat e la affida al ChatReceiver (o a un thread demone dedicato) che ne riceve i messaggi
+    private void joinChat (String projectName, String[] address) throws IOException {
         if (chats.containsKey(projectName) && !chats.get(projectName).isCancel()) throw new IllegalArgumentException("You have already joined this chat");
         else {
-            Chat chat = new Chat(username, address[0], Integer.parseInt(address[1].trim()));
+            Chat chat = new Chat(address[0], Integer.parseInt(address[1].trim()));
+            if (CHAT_THREADS) {
+                Thread threadChat = new Thread(chat);
+                threadChat.setDaemon(true);
+                threadChat.start();
+            } else {
+                if (receiver == null) receiver = new ChatReceiver();
+                receiver.join(chat);
+            }
             chats.put(projectName, chat);
-            Thread threadChat = new Thread(chat);
-            threadChat.setDaemon(true);
-            threadChat.start();
         }
     }
 
-    //EFFECTS: stampa i messaggi non letti del progetto <projectName>
-    private void read_msg(String projectName){
+    //EFFECTS: smette di ricevere i messaggi della chat
+    private void closeChat (Chat chat){
+        if (CHAT_THREADS) chat.close();
+        else receiver.leave(chat);
+    }
+
+    /* EFFECTS: stampa i messaggi non letti del progetto <projectName>, dopo aver recuperato dal server
+     *          quelli persi (numeri di sequenza mancanti) o inviati prima della join_chat */
+    private void read_msg(SocketChannel client, String projectName) throws IOException {
         Chat chat = chats.get(projectName);
         if (chat == null) throw new NoSuchElementException("Chat not found");
-        ArrayList<String> messages = chat.readMessages();
-        if (messages.isEmpty()) System.out.println("No unread message");
-        else {
-            for (String message : messages) {
-                System.out.println(message);
-            }
-        }
+        long missingAfter = chat.missingAfter();
+        String history = missingAfter >= 0 ? sendCmd(client, "chat_history " + projectName + " " + missingAfter) : null;
+        if (chat.readMessages(history, System.out::println) == 0) System.out.println("No unread message");
         if (chat.isCancel()){
+            closeChat(chat);
             chats.remove(projectName, chat);
         }
     }
 
-    //EFFECTS: manda un messaggio multicast sulla chat del progetto <projectName>
-    private void send_msg (String projectName, String message){
+    /* EFFECTS: manda un messaggio sulla chat del progetto <projectName>: il server gli assegna un numero
+     *          di sequenza e lo invia in multicast a tutti i membri */
+    private void send_msg (SocketChannel client, String projectName, String message) throws IOException {
         Chat chat = chats.get(projectName);
         if (chat == null) throw new NoSuchElementException("Chat not found");
         if (chat.isCancel()){
+            closeChat(chat);
             chats.remove(projectName, chat);
             throw new IllegalArgumentException("Project has been deleted");
         }
-        try {
-            chat.sendMessage(message);
-            System.out.println("Message sent");
-        } catch (IOException e) {
-            System.out.println(e.getMessage());
-        }
+        System.out.println(sendCmd(client, "send_msg " + projectName + " " + message).trim());
     }
     //"ricompatta" il messaggio che l'utente vuole mandare dopo l'invocazione del metodo split()
     private static String createMessage (String[] strings){
@@ -1,27 +1,43 @@
 import java.rmi.RemoteException;
 import java.rmi.server.RemoteObject;
 import java.util.HashMap;
+import java.util.Map;
 
 public class NotifyManager extends RemoteObject implements NotifyManagerInterface {
 
     /* OVERVIEW: modella il gestore delle notifiche del client
-     *           - users: insieme delle associazioni <username, state> */
-    private final HashMap<String, String> users;
+     *           - users: insieme delle associazioni <username, state>, letto anche dal thread principale
+     *           - version: versione dell'ultimo aggiornamento applicato a users; una notifica con una
+     *               versione non consecutiva indica che il client ha perso degli aggiornamenti */
+    private final Map<String, String> users;
+    private long version;
 
                                         //METODO COSTRUTTORE
 
     //THROWS:  RemoteException se si verificano errori durante l'esecuzione della chiamata remota
-    public NotifyManager(HashMap<String, String> users) throws RemoteException{
+    public NotifyManager(Map<String, String> users) throws RemoteException{
         super();
         this.users=users;
     }
 
     //-------------------------------------------------------------------------------------//
 
-                                        //METODO D'INTERFACCIA
+                                        //METODI D'INTERFACCIA
     @Override
-    public void notifyUpdate(HashMap<String, String> users) throws RemoteException {
+    public synchronized void notifyUpdate(HashMap<String, String> users, long version) throws RemoteException {
         //copio le associazioni chiavi-valore dal parametro d'ingresso alla variabile d'istanza
         this.users.putAll(users);
+        this.version = version;
+    }
+
+    @Override
+    public synchronized boolean notifyUserChange(String username, String state, long version) throws RemoteException {
+        //notifica già contenuta nell'ultima lista ricevuta
+        if (version <= this.version) return true;
+        //sono stati persi degli aggiornamenti: il server invierà l'intera lista
+        if (version != this.version + 1) return false;
+        this.users.put(username, state);
+        this.version = version;
+        return true;
     }
 }
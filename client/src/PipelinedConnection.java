@@ -0,0 +1,126 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class PipelinedConnection implements Runnable {
+
+    /* OVERVIEW: modella una connessione TCP con il server WORTH in modalità pipelining:
+     *           il client può inviare più comandi senza attendere le risposte. Ogni frame
+     *           è composto da <lunghezza><id><messaggio>, dove la lunghezza è espressa in byte
+     *           e si riferisce al solo messaggio; il server risponde con frame dello stesso
+     *           formato e un thread demone associa ogni risposta al comando con lo stesso id.
+     *              - client: canale (bloccante) verso il server
+     *              - inFlight: associazione <id, risposta attesa> dei comandi inviati
+     *              - nextId: identificativo del prossimo comando
+     *              - requestBuffer: buffer riutilizzato per inviare i comandi */
+
+    private final static int BUFFER_DIMENSION = 1024;
+
+    private final SocketChannel client;
+    private final ConcurrentHashMap<Integer, CompletableFuture<String>> inFlight;
+    private int nextId;
+    private ByteBuffer requestBuffer;
+
+                                        //METODO COSTRUTTORE
+
+    /* REQUIRES: client != null && client bloccante e connesso
+     * EFFECTS: chiede al server di passare alla modalità pipelining e avvia il thread
+     *          demone che riceve le risposte
+     * THROWS: IOException se si verifica un errore di I/O o se il server rifiuta la richiesta */
+    public PipelinedConnection(SocketChannel client) throws IOException {
+        if (client == null) throw new NullPointerException("Invalid channel");
+        this.client = client;
+        this.inFlight = new ConcurrentHashMap<>();
+        this.requestBuffer = ByteBuffer.allocate(BUFFER_DIMENSION);
+
+        //la richiesta di cambio modalità viaggia ancora nel formato <lunghezza><messaggio>
+        byte[] request = "pipeline".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer frame = ByteBuffer.allocate(Integer.BYTES + request.length);
+        frame.putInt(request.length).put(request).flip();
+        while (frame.hasRemaining()) client.write(frame);
+
+        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
+        readFully(length);
+        ByteBuffer reply = ByteBuffer.allocate(length.getInt(0));
+        readFully(reply);
+        String answer = new String(reply.array(), StandardCharsets.UTF_8);
+        if (!answer.equals("Pipelining enabled")) throw new IOException(answer);
+
+        Thread reader = new Thread(this, "pipeline-reader");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI D'ISTANZA
+
+    /* REQUIRES: cmdLine != null
+     * EFFECTS: invia il comando al server senza attendere la risposta
+     * THROWS: IOException se si verifica un errore di I/O
+     * RETURN: la risposta del server, disponibile quando arriva il frame con lo stesso id */
+    public synchronized CompletableFuture<String> submit(String cmdLine) throws IOException {
+        if (cmdLine == null) throw new NullPointerException("Invalid command");
+        int id = nextId++;
+        CompletableFuture<String> answer = new CompletableFuture<>();
+        inFlight.put(id, answer);
+
+        byte[] request = cmdLine.getBytes(StandardCharsets.UTF_8);
+        if (requestBuffer.capacity() < 2 * Integer.BYTES + request.length)
+            requestBuffer = ByteBuffer.allocate(2 * Integer.BYTES + request.length);
+        requestBuffer.clear();
+        requestBuffer.putInt(request.length).putInt(id).put(request).flip();
+        try {
+            while (requestBuffer.hasRemaining()) client.write(requestBuffer);
+        } catch (IOException e) {
+            inFlight.remove(id);
+            throw e;
+        }
+        return answer;
+    }
+
+    @Override
+    // Thread demone che riceve le risposte del server e completa i comandi corrispondenti
+    public void run() {
+        ByteBuffer header = ByteBuffer.allocate(2 * Integer.BYTES);
+        ByteBuffer reply = ByteBuffer.allocate(BUFFER_DIMENSION);
+        try {
+            while (true) {
+                header.clear();
+                readFully(header);
+                int length = header.getInt(0);
+                int id = header.getInt(Integer.BYTES);
+                if (length < 0) throw new IOException("Invalid reply length");
+
+                if (reply.capacity() < length) reply = ByteBuffer.allocate(length);
+                reply.clear();
+                reply.limit(length);
+                readFully(reply);
+
+                CompletableFuture<String> answer = inFlight.remove(id);
+                if (answer != null) answer.complete(new String(reply.array(), 0, length, StandardCharsets.UTF_8));
+            }
+        } catch (IOException e) {
+            //la connessione è stata chiusa: i comandi in sospeso non avranno risposta
+            for (CompletableFuture<String> answer : inFlight.values()) {
+                answer.completeExceptionally(e);
+            }
+            inFlight.clear();
+        }
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //FUNZIONI AUSILIARIE
+
+    //legge dal canale finché il buffer non è pieno
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (client.read(buffer) < 0) throw new IOException("Connection closed by the server");
+        }
+    }
+
+}
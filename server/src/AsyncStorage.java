@@ -0,0 +1,233 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+public class AsyncStorage implements Storage, Runnable {
+
+    /* OVERVIEW: modella uno stadio di persistenza asincrono posto davanti a un altro storage: i worker
+     *           registrano soltanto quali elementi sono cambiati (copiando le card, che continuano a essere
+     *           modificate), mentre un thread dedicato li salva nello storage sottostante entro la finestra
+     *           di durabilità; le modifiche successive dello stesso elemento all'interno della finestra
+     *           vengono accorpate e salvate una sola volta. Alla chiusura vengono salvate tutte le
+     *           modifiche in sospeso: fino al termine dell'ultimo salvataggio anche le modifiche che arrivano
+     *           durante la chiusura passano dal thread flusher, così non possono essere sovrascritte da una
+     *           versione precedente dello stesso elemento che il thread sta ancora salvando
+     *              - storage: storage in cui vengono salvate le modifiche
+     *              - window: finestra di durabilità (in ms): intervallo massimo tra una modifica e il suo salvataggio
+     *              - lock: monitor che protegge le modifiche in sospeso
+     *              - users: utenti da salvare, indicizzati per username
+     *              - projects: modifiche in sospeso di ogni progetto, indicizzate per nome
+     *              - firstChange: istante della prima modifica non ancora salvata
+     *              - closed: true se lo storage è stato chiuso
+     *              - drained: true quando il thread flusher, dopo la chiusura, ha salvato tutte le modifiche
+     *                  in sospeso ed è terminato; da quel momento le modifiche vengono salvate direttamente
+     *              - flusher: thread che salva le modifiche */
+
+    private final Storage storage;
+    private final long window;
+    private final Object lock;
+
+    private LinkedHashMap<String, User> users;
+    private LinkedHashMap<String, Changes> projects;
+    private long firstChange;
+    private boolean closed;
+    private boolean drained;
+
+    private final Thread flusher;
+
+                                        //METODO COSTRUTTORE
+
+    /* REQUIRES: storage != null && window > 0
+     * EFFECTS: crea lo stadio asincrono e avvia il thread che salva le modifiche */
+    public AsyncStorage(Storage storage, long window) {
+        if (storage == null) throw new NullPointerException("Invalid storage");
+        if (window <= 0) throw new IllegalArgumentException("Invalid flush window");
+        this.storage = storage;
+        this.window = window;
+        this.lock = new Object();
+        this.users = new LinkedHashMap<>();
+        this.projects = new LinkedHashMap<>();
+        this.flusher = new Thread(this, "storage-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI D'INTERFACCIA
+
+    @Override
+    public void saveUser(User user) {
+        if (user == null) throw new NullPointerException("Invalid user");
+        synchronized (lock) {
+            if (!drained) {
+                changed();
+                users.put(user.getName(), user);
+                return;
+            }
+        }
+        storage.saveUser(user);
+    }
+
+    @Override
+    public void saveMembers(String projectName, List<String> members) {
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        if (members == null) throw new NullPointerException("Invalid members");
+        ArrayList<String> copy = new ArrayList<>(members);
+        synchronized (lock) {
+            if (!drained) {
+                changed();
+                changes(projectName).members = copy;
+                return;
+            }
+        }
+        storage.saveMembers(projectName, copy);
+    }
+
+    @Override
+    public void saveCard(String projectName, Card card) {
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        if (card == null) throw new NullPointerException("Invalid card");
+        Card copy = card.copy();
+        synchronized (lock) {
+            if (!drained) {
+                changed();
+                changes(projectName).cards.put(copy.getName(), copy);
+                return;
+            }
+        }
+        storage.saveCard(projectName, copy);
+    }
+
+    @Override
+    public void saveCards(String projectName, Collection<Card> cards) {
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        if (cards == null) throw new NullPointerException("Invalid cards");
+        ArrayList<Card> copies = new ArrayList<>(cards.size());
+        for (Card card : cards) {
+            copies.add(card.copy());
+        }
+        synchronized (lock) {
+            if (!drained) {
+                changed();
+                Changes changes = changes(projectName);
+                for (Card copy : copies) {
+                    changes.cards.put(copy.getName(), copy);
+                }
+                return;
+            }
+        }
+        storage.saveCards(projectName, copies);
+    }
+
+    @Override
+    //EFFECTS: scarta le modifiche in sospeso del progetto, che verrà eliminato prima di ogni modifica successiva
+    public void deleteProject(String projectName) {
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        synchronized (lock) {
+            if (!drained) {
+                changed();
+                Changes changes = changes(projectName);
+                changes.deleted = true;
+                changes.members = null;
+                changes.cards.clear();
+                return;
+            }
+        }
+        storage.deleteProject(projectName);
+    }
+
+    @Override
+    public void recover(RecoveryHandler handler) throws IOException {
+        storage.recover(handler);
+    }
+
+    @Override
+    //EFFECTS: attende il salvataggio delle modifiche in sospeso e chiude lo storage sottostante
+    public void close() {
+        synchronized (lock) {
+            if (closed) return;
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        storage.close();
+    }
+
+    @Override
+    /* EFFECTS: salva le modifiche in sospeso allo scadere di ogni finestra; dopo la chiusura continua a
+     *          salvarle senza attendere, finché non ne resta nessuna */
+    public void run() {
+        while (true) {
+            LinkedHashMap<String, User> dirtyUsers;
+            LinkedHashMap<String, Changes> dirtyProjects;
+            synchronized (lock) {
+                try {
+                    while (!closed && users.isEmpty() && projects.isEmpty()) lock.wait();
+                    //le modifiche che arrivano entro la finestra vengono salvate insieme alla prima
+                    long wait;
+                    while (!closed && (wait = firstChange + window - System.currentTimeMillis()) > 0) lock.wait(wait);
+                } catch (InterruptedException e) {
+                    closed = true;
+                }
+                if (closed && users.isEmpty() && projects.isEmpty()) {
+                    drained = true;
+                    return;
+                }
+                dirtyUsers = users;
+                dirtyProjects = projects;
+                users = new LinkedHashMap<>();
+                projects = new LinkedHashMap<>();
+            }
+            flush(dirtyUsers, dirtyProjects);
+        }
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI AUSILIARI
+
+    //restituisce le modifiche in sospeso del progetto <projectName>, creandole se necessario (da invocare sul monitor lock)
+    private Changes changes(String projectName) {
+        return projects.computeIfAbsent(projectName, name -> new Changes());
+    }
+
+    /* EFFECTS: se non ci sono modifiche in sospeso, registra l'istante della nuova modifica e sveglia
+     *          il thread flusher (da invocare sul monitor lock, prima di registrare la modifica) */
+    private void changed() {
+        if (users.isEmpty() && projects.isEmpty()) {
+            firstChange = System.currentTimeMillis();
+            lock.notifyAll();
+        }
+    }
+
+    //EFFECTS: salva le modifiche nello storage sottostante
+    private void flush(LinkedHashMap<String, User> dirtyUsers, LinkedHashMap<String, Changes> dirtyProjects) {
+        for (User user : dirtyUsers.values()) {
+            storage.saveUser(user);
+        }
+        for (Map.Entry<String, Changes> entry : dirtyProjects.entrySet()) {
+            Changes changes = entry.getValue();
+            if (changes.deleted) storage.deleteProject(entry.getKey());
+            if (changes.members != null) storage.saveMembers(entry.getKey(), changes.members);
+            if (!changes.cards.isEmpty()) storage.saveCards(entry.getKey(), changes.cards.values());
+        }
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+    //modifiche in sospeso di un progetto: eliminazione, ultima lista dei membri e ultima copia di ogni card
+    private static class Changes {
+        private boolean deleted;
+        private ArrayList<String> members;
+        private final LinkedHashMap<String, Card> cards = new LinkedHashMap<>();
+    }
+
+}
@@ -0,0 +1,190 @@
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+public class BinarySnapshot {
+
+    /* OVERVIEW: formato binario compatto dell'intero stato del server WORTH (utenti, progetti, membri e card),
+     *           usato come snapshot del write-ahead log e dal convertitore SnapshotConverter.
+     *           Il file ha la forma (interi big-endian, stringhe UTF-8 precedute dalla loro lunghezza):
+     *              <magic><versione><generazione>
+     *              <numero di utenti> { <username><password> }
+     *              <numero di progetti> { <nome><numero di membri> { <membro> }
+     *                                     <numero di card> { <nome><descrizione><lunghezza della storia> { <stato> } } }
+     *              <crc32 di tutto ciò che precede>
+     *           dove ogni stato della storia di una card occupa un byte (ordinale di CardState).
+     *           Il file viene scritto in un file temporaneo e poi rinominato, così un crash durante
+     *           la scrittura lascia intatto lo snapshot precedente; viene letto mappandolo in memoria */
+
+    private final static int MAGIC = 0x57525442;
+    private final static int VERSION = 1;
+    private final static int BUFFER_DIMENSION = 64 * 1024;
+    private final static CardState[] STATES = CardState.values();
+
+    private BinarySnapshot() {}
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //FUNZIONI
+
+    /* REQUIRES: file != null && users != null && members != null && cards != null
+     * EFFECTS: scrive atomicamente lo snapshot in <file>; i progetti sono quelli di <members>,
+     *          nel loro ordine, e le card di ognuno sono cercate in <cards> (associazione <progetto, <nome, card>>)
+     * THROWS: IOException se si verifica un errore di I/O */
+    public static void write(File file, long generation, Collection<User> users,
+                             Map<String, ? extends Collection<String>> members,
+                             Map<String, ? extends Map<String, Card>> cards) throws IOException {
+        if (file == null) throw new NullPointerException("Invalid file");
+        if (users == null || members == null || cards == null) throw new NullPointerException("Invalid state");
+
+        File tmp = new File(file.getPath() + ".tmp");
+        CRC32 crc = new CRC32();
+        try (FileOutputStream fileOutputStream = new FileOutputStream(tmp)) {
+            DataOutputStream out = new DataOutputStream(new CheckedOutputStream(new BufferedOutputStream(fileOutputStream, BUFFER_DIMENSION), crc));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(generation);
+
+            out.writeInt(users.size());
+            for (User user : users) {
+                writeString(out, user.getName());
+                writeString(out, user.getPassword());
+            }
+
+            out.writeInt(members.size());
+            for (Map.Entry<String, ? extends Collection<String>> entry : members.entrySet()) {
+                writeString(out, entry.getKey());
+                out.writeInt(entry.getValue().size());
+                for (String member : entry.getValue()) {
+                    writeString(out, member);
+                }
+                Map<String, Card> projectCards = cards.get(entry.getKey());
+                out.writeInt(projectCards == null ? 0 : projectCards.size());
+                if (projectCards == null) continue;
+                for (Card card : projectCards.values()) {
+                    writeString(out, card.getName());
+                    writeString(out, card.getDescription());
+                    out.writeInt(card.getStory().size());
+                    for (CardState state : card.getStory()) {
+                        out.writeByte(state.ordinal());
+                    }
+                }
+            }
+            out.flush();
+            //il crc viene scritto direttamente sul file, fuori dai dati su cui è calcolato
+            fileOutputStream.write(ByteBuffer.allocate(Integer.BYTES).putInt((int) crc.getValue()).array());
+            fileOutputStream.getFD().sync();
+        }
+        Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(file.getAbsoluteFile().getParentFile());
+    }
+
+    /* REQUIRES: file != null && handler != null
+     * EFFECTS: mappa in memoria lo snapshot, ne verifica il crc e passa a <handler> ogni utente,
+     *          lista dei membri e card (i membri di un progetto prima delle sue card)
+     * THROWS: IOException se lo snapshot non è valido o si verifica un errore di I/O
+     * RETURN: la generazione salvata nello snapshot */
+    public static long read(File file, RecoveryHandler handler) throws IOException {
+        if (file == null) throw new NullPointerException("Invalid file");
+        if (handler == null) throw new NullPointerException("Invalid handler");
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 2 * Integer.BYTES + Long.BYTES + 3 * Integer.BYTES || size > Integer.MAX_VALUE)
+                throw new IOException("Invalid snapshot " + file);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            CRC32 crc = new CRC32();
+            buffer.limit((int) size - Integer.BYTES);
+            crc.update(buffer);
+            buffer.limit((int) size);
+            if (buffer.getInt() != (int) crc.getValue()) throw new IOException("Corrupted snapshot " + file);
+            buffer.rewind();
+            buffer.limit((int) size - Integer.BYTES);
+
+            try {
+                if (buffer.getInt() != MAGIC) throw new IOException("Invalid snapshot " + file);
+                if (buffer.getInt() != VERSION) throw new IOException("Unsupported snapshot version " + file);
+                long generation = buffer.getLong();
+
+                int users = buffer.getInt();
+                for (int i = 0; i < users; i++) {
+                    String name = readString(buffer);
+                    handler.user(new User(name, readString(buffer), UserState.OFFLINE));
+                }
+
+                int projects = buffer.getInt();
+                for (int i = 0; i < projects; i++) {
+                    String projectName = readString(buffer);
+                    int count = buffer.getInt();
+                    ArrayList<String> members = new ArrayList<>(count);
+                    for (int j = 0; j < count; j++) {
+                        members.add(readString(buffer));
+                    }
+                    handler.members(projectName, members);
+
+                    int cards = buffer.getInt();
+                    for (int j = 0; j < cards; j++) {
+                        Card card = new Card(readString(buffer), readString(buffer));
+                        int length = buffer.getInt();
+                        ArrayList<CardState> story = new ArrayList<>(length);
+                        for (int k = 0; k < length; k++) {
+                            story.add(STATES[buffer.get()]);
+                        }
+                        card.setStory(story);
+                        handler.card(projectName, card);
+                    }
+                }
+                if (buffer.hasRemaining()) throw new IOException("Invalid snapshot " + file);
+                return generation;
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+                throw new IOException("Invalid snapshot " + file, e);
+            }
+        }
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //FUNZIONI AUSILIARIE
+
+    //scrive una stringa preceduta dalla lunghezza della sua codifica UTF-8
+    private static void writeString(DataOutputStream out, String string) throws IOException {
+        byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    //legge una stringa preceduta dalla sua lunghezza
+    private static String readString(MappedByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new IllegalArgumentException("Invalid string length");
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    //EFFECTS: sincronizza la directory, così che la rinomina del file sopravviva a un crash
+    private static void syncDirectory(File dir) {
+        try (FileChannel channel = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException ignored) {
+            //non tutti i sistemi operativi permettono di sincronizzare una directory
+        }
+    }
+
+}
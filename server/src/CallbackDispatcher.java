@@ -0,0 +1,249 @@
+import java.rmi.RemoteException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+public class CallbackDispatcher {
+
+    /* OVERVIEW: consegna ai client registrati per le callback i cambiamenti di stato degli utenti, con un
+     *           pool di thread dedicato: chi pubblica un cambiamento lo aggiunge soltanto alla storia
+     *           (in tempo costante, indipendentemente dal numero di client), mentre ogni client viene
+     *           servito da al più un thread alla volta, così riceve le notifiche in ordine di versione
+     *           e un client lento o bloccato non ritarda gli altri.
+     *           La storia è un buffer circolare limitato condiviso da tutti i client, ognuno dei quali ha
+     *           un proprio cursore (coda limitata): il client che resta indietro più della capienza
+     *           della storia, o che segnala di aver perso delle notifiche, riceve l'intera lista degli
+     *           utenti. Il client che non risponde entro il timeout RMI viene rimosso.
+     *           Una callback bloccata occupa il suo thread fino al timeout, quindi il pool non è fisso: ogni
+     *           STALL_MS un watchdog conta le callback in corso da più di STALL_MS e, se ce ne sono, aggiunge
+     *           ai threads thread un thread per ognuna di esse e uno per ogni client in attesa nella coda;
+     *           così anche con più client bloccati che thread gli altri attendono al più circa 2 * STALL_MS, e
+     *           il pool non supera mai threads thread più uno per client. I thread aggiunti terminano
+     *           quando le callback ritornano
+     *              - snapshot: fornisce l'intera lista degli utenti, con i relativi stati
+     *              - history: ultimi cambiamenti pubblicati; il cambiamento di versione v è in history[v % capacity]
+     *              - version: versione dell'ultimo cambiamento pubblicato
+     *              - subscribers: client registrati, indicizzati per stub
+     *              - fanOutPending: true se è già stato richiesto di servire i client dopo una pubblicazione
+     *              - threads: numero di thread del pool quando nessuna callback è bloccata
+     *              - executor: pool di thread che eseguono le callback
+     *              - watchdog: thread che adegua la dimensione del pool alle callback bloccate
+     *              - calling: client di cui è in corso una callback
+     *              - lock: monitor che protegge storia, versione, client registrati, i loro cursori e calling */
+
+    //intervallo (in ms) dopo il quale una callback in corso viene considerata bloccata
+    private final static long STALL_MS = 100;
+
+    private final Supplier<HashMap<String, String>> snapshot;
+    private final Change[] history;
+    private long version;
+    private final LinkedHashMap<NotifyManagerInterface, Subscriber> subscribers;
+    private boolean fanOutPending;
+    private final int threads;
+    private final ThreadPoolExecutor executor;
+    private final ScheduledExecutorService watchdog;
+    private final LinkedHashSet<Subscriber> calling;
+    private final Object lock;
+
+                                        //METODO COSTRUTTORE
+
+    /* REQUIRES: snapshot != null && threads > 0 && capacity > 0
+     * EFFECTS: crea il dispatcher con <threads> thread (più uno per ogni callback bloccata) e una storia
+     *          di <capacity> cambiamenti */
+    public CallbackDispatcher(Supplier<HashMap<String, String>> snapshot, int threads, int capacity) {
+        if (snapshot == null) throw new NullPointerException("Invalid snapshot supplier");
+        if (threads <= 0) throw new IllegalArgumentException("Invalid number of callback threads");
+        if (capacity <= 0) throw new IllegalArgumentException("Invalid callback queue size");
+        this.snapshot = snapshot;
+        this.history = new Change[capacity];
+        this.subscribers = new LinkedHashMap<>();
+        this.threads = threads;
+        this.calling = new LinkedHashSet<>();
+        this.lock = new Object();
+
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "callback-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        //ogni client ha al più un task in coda, quindi la coda è limitata dal numero di client; con una
+        //coda non limitata il pool non supera mai il numero di thread core, impostato dal watchdog
+        this.executor = new ThreadPoolExecutor(threads, Integer.MAX_VALUE, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>(), threadFactory);
+        this.watchdog = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "callback-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.watchdog.scheduleWithFixedDelay(this::resize, STALL_MS, STALL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI D'ISTANZA
+
+    /* REQUIRES: client != null
+     * EFFECTS: registra il client, che riceverà per prima cosa l'intera lista degli utenti
+     * RETURN: false se il client era già registrato, true altrimenti */
+    public boolean subscribe(NotifyManagerInterface client) {
+        if (client == null) throw new NullPointerException("Invalid client");
+        synchronized (lock) {
+            if (subscribers.containsKey(client)) return false;
+            Subscriber subscriber = new Subscriber(client);
+            subscribers.put(client, subscriber);
+            schedule(subscriber);
+            return true;
+        }
+    }
+
+    /* REQUIRES: client != null
+     * EFFECTS: rimuove il client, che non riceverà più notifiche
+     * RETURN: true se il client era registrato, false altrimenti */
+    public boolean unsubscribe(NotifyManagerInterface client) {
+        if (client == null) throw new NullPointerException("Invalid client");
+        synchronized (lock) {
+            return subscribers.remove(client) != null;
+        }
+    }
+
+    /* REQUIRES: user != null
+     * EFFECTS: pubblica il nuovo stato di <user> con una nuova versione e chiede di servire i client;
+     *          lo stato viene letto dopo aver acquisito il lock, quindi l'ultimo cambiamento pubblicato
+     *          per un utente contiene sempre il suo stato più recente */
+    public void publish(User user) {
+        if (user == null) throw new NullPointerException("Invalid user");
+        synchronized (lock) {
+            version++;
+            history[(int) (version % history.length)] = new Change(user.getName(), user.getState().toString(), version);
+            if (fanOutPending) return;
+            fanOutPending = true;
+        }
+        executor.execute(this::fanOut);
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI AUSILIARI
+
+    /* EFFECTS: porta il pool a threads thread più, se ci sono callback in corso da più di STALL_MS, uno per
+     *          ognuna di esse e uno per ogni client in coda, che altrimenti resterebbe in attesa del timeout */
+    private void resize() {
+        int stalled = 0;
+        long now = System.nanoTime();
+        synchronized (lock) {
+            for (Subscriber subscriber : calling) {
+                if (now - subscriber.since > TimeUnit.MILLISECONDS.toNanos(STALL_MS)) stalled++;
+            }
+        }
+        int size = stalled == 0 ? threads : threads + stalled + executor.getQueue().size();
+        //i thread in più terminano quando finiscono la callback che stanno eseguendo
+        if (executor.getCorePoolSize() != size) executor.setCorePoolSize(size);
+    }
+
+    //EFFECTS: avvia la consegna ai client che hanno notifiche in sospeso
+    private void fanOut() {
+        synchronized (lock) {
+            fanOutPending = false;
+            for (Subscriber subscriber : subscribers.values()) {
+                schedule(subscriber);
+            }
+        }
+    }
+
+    //EFFECTS: affida il client a un thread del pool, se ha notifiche in sospeso e non è già servito (da invocare sul lock)
+    private void schedule(Subscriber subscriber) {
+        if (subscriber.scheduled || (!subscriber.resync && subscriber.cursor >= version)) return;
+        subscriber.scheduled = true;
+        executor.execute(() -> deliver(subscriber));
+    }
+
+    //EFFECTS: consegna al client, in ordine, le notifiche in sospeso; rimuove il client se la callback fallisce
+    private void deliver(Subscriber subscriber) {
+        while (true) {
+            Change change = null;
+            long snapshotVersion = 0;
+            synchronized (lock) {
+                if (subscribers.get(subscriber.client) != subscriber) {
+                    subscriber.scheduled = false;
+                    return;
+                }
+                //i cambiamenti successivi al cursore non sono più nella storia
+                if (version - subscriber.cursor > history.length) subscriber.resync = true;
+                if (subscriber.resync) snapshotVersion = version;
+                else if (subscriber.cursor < version) change = history[(int) ((subscriber.cursor + 1) % history.length)];
+                else {
+                    subscriber.scheduled = false;
+                    return;
+                }
+                subscriber.since = System.nanoTime();
+                calling.add(subscriber);
+            }
+
+            try {
+                if (change == null) {
+                    //la lista è costruita dopo aver letto la versione, quindi contiene tutti i cambiamenti fino a essa
+                    subscriber.client.notifyUpdate(snapshot.get(), snapshotVersion);
+                    synchronized (lock) {
+                        calling.remove(subscriber);
+                        subscriber.resync = false;
+                        subscriber.cursor = snapshotVersion;
+                    }
+                } else {
+                    boolean delivered = subscriber.client.notifyUserChange(change.username, change.state, change.version);
+                    synchronized (lock) {
+                        calling.remove(subscriber);
+                        if (delivered) subscriber.cursor = change.version;
+                        else subscriber.resync = true;
+                    }
+                }
+            } catch (RemoteException | RuntimeException e) {
+                synchronized (lock) {
+                    calling.remove(subscriber);
+                    subscriber.scheduled = false;
+                    if (subscribers.remove(subscriber.client, subscriber)) System.out.println("Client evicted: " + e.getMessage());
+                }
+                return;
+            }
+        }
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+    //cambiamento di stato di un utente
+    private static class Change {
+        private final String username;
+        private final String state;
+        private final long version;
+
+        private Change(String username, String state, long version) {
+            this.username = username;
+            this.state = state;
+            this.version = version;
+        }
+    }
+
+    /* client registrato: cursor è la versione dell'ultima notifica consegnata, resync indica che deve
+       ricevere l'intera lista, scheduled che è già servito da un thread del pool, since l'istante
+       (System.nanoTime) in cui è iniziata la callback in corso */
+    private static class Subscriber {
+        private final NotifyManagerInterface client;
+        private long cursor;
+        private boolean resync;
+        private boolean scheduled;
+        private long since;
+
+        private Subscriber(NotifyManagerInterface client) {
+            this.client = client;
+            this.resync = true;
+        }
+    }
+
+}
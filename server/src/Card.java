@@ -51,6 +51,15 @@ public class Card {
         this.story.add(nameList);
     }
 
+    //RETURN: una copia di this.card, che non risente dei successivi spostamenti dell'originale
+    public Card copy (){
+        Card card = new Card();
+        card.name = this.name;
+        card.description = this.description;
+        card.story = new ArrayList<>(this.story);
+        return card;
+    }
+
     /* EFFECTS: crea una stringa che rappresenta la storia di this.card
      * RETURN: la storia di this.card*/
 
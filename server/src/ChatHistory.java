@@ -0,0 +1,84 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+public class ChatHistory {
+
+    /* OVERVIEW: ultimi messaggi (di chat e di sistema) inviati sulla chat di un progetto, ognuno con un
+     *           numero di sequenza crescente; è un buffer circolare limitato senza lock: chi aggiunge un
+     *           messaggio ottiene il numero di sequenza con un incremento atomico e lo pubblica nella
+     *           posizione corrispondente, sovrascrivendo il messaggio più vecchio. I client che si
+     *           accorgono di aver perso dei messaggi (numeri di sequenza non consecutivi) li recuperano
+     *           da qui con il comando chat_history
+     *              - sequence: numero di sequenza dell'ultimo messaggio aggiunto
+     *              - messages: ultimi messaggi aggiunti; il messaggio con numero di sequenza s è in
+     *                  messages[s % capacity], finché non viene sovrascritto */
+
+    private final AtomicLong sequence;
+    private final AtomicReferenceArray<Message> messages;
+
+                                        //METODO COSTRUTTORE
+
+    /* REQUIRES: capacity > 0
+     * EFFECTS: crea una storia vuota che conserva gli ultimi <capacity> messaggi */
+    public ChatHistory(int capacity) {
+        if (capacity <= 0) throw new IllegalArgumentException("Invalid chat history size");
+        this.sequence = new AtomicLong();
+        this.messages = new AtomicReferenceArray<>(capacity);
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI D'ISTANZA
+
+    /* REQUIRES: text != null
+     * EFFECTS: aggiunge il messaggio alla storia con un nuovo numero di sequenza
+     * RETURN: il numero di sequenza assegnato al messaggio (il primo è 1) */
+    public long append(String text) {
+        if (text == null) throw new NullPointerException("Invalid message");
+        long number = sequence.incrementAndGet();
+        messages.set(index(number), new Message(number, text));
+        return number;
+    }
+
+    /* EFFECTS: restituisce i messaggi ancora presenti nella storia con numero di sequenza maggiore di <after>,
+     *          uno per riga nella forma "<numero di sequenza> <messaggio>"; si ferma al primo messaggio
+     *          il cui numero di sequenza è stato assegnato ma che non è ancora stato pubblicato */
+    public String readAfter(long after) {
+        long last = sequence.get();
+        long first = Math.max(after + 1, last - messages.length() + 1);
+        StringBuilder history = new StringBuilder();
+        for (long number = first; number <= last; number++) {
+            Message message = messages.get(index(number));
+            //messaggio non ancora pubblicato da chi l'ha aggiunto
+            if (message == null || message.number < number) break;
+            //messaggio già sovrascritto da uno più recente
+            if (message.number > number) continue;
+            history.append(number).append(" ").append(message.text).append("\n");
+        }
+        if (history.length() == 0) return "No new message";
+        return history.toString();
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI AUSILIARI
+
+    //restituisce la posizione del messaggio con numero di sequenza <number>
+    private int index(long number) {
+        return (int) (number % messages.length());
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+    //messaggio della storia con il suo numero di sequenza
+    private static class Message {
+        private final long number;
+        private final String text;
+
+        private Message(long number, String text) {
+            this.number = number;
+            this.text = text;
+        }
+    }
+
+}
@@ -0,0 +1,239 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class JsonStorage implements Storage {
+
+    /* OVERVIEW: modella la persistenza dello stato del server WORTH in file JSON, all'interno della
+     *           directory "Recovery": il file users.json contiene gli utenti registrati e per ogni
+     *           progetto c'è una directory con il file members.json e un file <card>.json per ogni card
+     *              - root: directory di recovery
+     *              - users: utenti registrati, nell'ordine in cui compaiono in users.json
+     *              - recoveryThreads: numero di thread che leggono in parallelo le directory dei progetti
+     *           I file vengono letti e scritti con gli oggetti condivisi di JsonSupport */
+
+    private final File root;
+    private final LinkedHashMap<String, User> users;
+    private final int recoveryThreads;
+
+                                        //METODO COSTRUTTORE
+
+    //REQUIRES: recoveryThreads > 0
+    public JsonStorage(int recoveryThreads) {
+        this(new File("./Recovery"), recoveryThreads);
+    }
+
+    //REQUIRES: root != null && recoveryThreads > 0
+    public JsonStorage(File root, int recoveryThreads) {
+        if (root == null) throw new NullPointerException("Invalid directory");
+        if (recoveryThreads <= 0) throw new IllegalArgumentException("Invalid number of recovery threads");
+        this.root = root;
+        this.users = new LinkedHashMap<>();
+        this.recoveryThreads = recoveryThreads;
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI D'INTERFACCIA
+
+    @Override
+    //EFFECTS: aggiorna il file users.json, che contiene tutti gli utenti registrati
+    public void saveUser(User user) {
+        if (user == null) throw new NullPointerException("Invalid user");
+        saveUsers(Collections.singletonList(user));
+    }
+
+    /* REQUIRES: registered != null
+     * EFFECTS: aggiunge gli utenti al file users.json con un'unica scrittura */
+    public void saveUsers(Collection<User> registered) {
+        if (registered == null) throw new NullPointerException("Invalid users");
+        //le scritture di users.json sono serializzate e ognuna contiene tutti gli utenti salvati prima del suo inizio
+        synchronized (users) {
+            for (User user : registered) {
+                users.put(user.getName(), user);
+            }
+            createDirectory(root);
+            try {
+                JsonSupport.USERS_FILE_WRITER.writeValue(new File(root, "users.json"), new ArrayList<>(users.values()));
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    @Override
+    //EFFECTS: crea la directory del progetto se non esiste e salva i nomi dei membri su members.json
+    public void saveMembers(String projectName, List<String> members) {
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        if (members == null) throw new NullPointerException("Invalid members");
+        File projectDir = new File(root, projectName);
+        if (createDirectory(projectDir)) System.out.println("Project directory created");
+        try {
+            JsonSupport.MEMBERS_FILE_WRITER.writeValue(new File(projectDir, "members.json"), members);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    //EFFECTS: salva la card nel file <card>.json della directory del progetto
+    public void saveCard(String projectName, Card card) {
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        if (card == null) throw new NullPointerException("Invalid card");
+        try {
+            JsonSupport.CARD_FILE_WRITER.writeValue(cardFile(projectName, card), card);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void saveCards(String projectName, Collection<Card> cards) {
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        if (cards == null) throw new NullPointerException("Invalid cards");
+        try {
+            for (Card card : cards) {
+                JsonSupport.CARD_FILE_WRITER.writeValue(cardFile(projectName, card), card);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    //EFFECTS: svuota la directory del progetto e la elimina
+    public void deleteProject(String projectName) {
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        File projectDir = new File(root, projectName);
+        if (projectDir.exists()) {
+            File[] files = projectDir.listFiles();
+            if (files != null) {
+                for (File file: files) {
+                    if (file.delete()) System.out.println(file.getName() + " deleted");
+                }
+            }
+            if (projectDir.delete()) System.out.println("Directory " + projectName + " deleted");
+        }
+    }
+
+    @Override
+    /* EFFECTS: legge i contenuti della directory "Recovery": le directory dei progetti vengono lette
+     *          in parallelo su un pool fork-join, poi passate a <handler> in ordine di nome */
+    public void recover(RecoveryHandler handler) throws IOException {
+        if (handler == null) throw new NullPointerException("Invalid handler");
+        if (!root.exists()) return;
+        File[] files = root.listFiles();
+        if (files == null || files.length == 0) return;
+        Arrays.sort(files);
+
+        ArrayList<File> projectDirs = new ArrayList<>();
+        File usersFile = null;
+        for (File file : files) {
+            if (file.isDirectory()) projectDirs.add(file);
+            else if (file.getName().equals("users.json")) usersFile = file;
+        }
+
+        ForkJoinPool pool = new ForkJoinPool(recoveryThreads);
+        try {
+            //ogni progetto viene letto da un task indipendente
+            AtomicInteger loaded = new AtomicInteger();
+            int step = Math.max(1, projectDirs.size() / 10);
+            ArrayList<ForkJoinTask<RestoredProject>> tasks = new ArrayList<>(projectDirs.size());
+            for (File projectDir : projectDirs) {
+                tasks.add(pool.submit(() -> {
+                    RestoredProject project = readProject(projectDir);
+                    int count = loaded.incrementAndGet();
+                    if (count % step == 0 || count == projectDirs.size())
+                        System.out.println("Recovery: " + count + "/" + projectDirs.size() + " progetti letti");
+                    return project;
+                }));
+            }
+
+            //nel frattempo il thread chiamante legge il file di registrazione
+            if (usersFile != null) {
+                ArrayList<User> registered = JsonSupport.USERS_READER.readValue(usersFile);
+                synchronized (users) {
+                    for (User user : registered) {
+                        users.put(user.getName(), user);
+                        handler.user(user);
+                    }
+                }
+            }
+
+            for (int i = 0; i < tasks.size(); i++) {
+                RestoredProject project = tasks.get(i).get();
+                if (project == null) continue;
+                String projectName = projectDirs.get(i).getName();
+                if (project.members != null) handler.members(projectName, project.members);
+                for (Card card : project.cards) {
+                    handler.card(projectName, card);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Recovery interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Override
+    //EFFECTS: ogni modifica viene scritta su disco immediatamente, non c'è nulla da salvare
+    public void close() {}
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI AUSILIARI
+
+    //restituisce il file in cui viene salvata la card del progetto indicato
+    private File cardFile(String projectName, Card card) {
+        return new File(root, projectName + File.separator + card.getName() + ".json");
+    }
+
+    /* EFFECTS: legge in streaming i membri e le card di un progetto
+     * RETURN: il contenuto della directory, null se è vuota */
+    private RestoredProject readProject(File projectDir) throws IOException {
+        File[] files = projectDir.listFiles();
+        if (files == null || files.length == 0) return null;
+        Arrays.sort(files);
+        RestoredProject project = new RestoredProject();
+        for (File file : files) {
+            //file dei membri del progetto
+            if (file.getName().equals("members.json")) project.members = JsonSupport.MEMBERS_READER.readValue(file);
+            //file della card del progetto
+            else project.cards.add(JsonSupport.CARD_READER.readValue(file));
+        }
+        return project;
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //FUNZIONI AUSILIARIE
+
+    //crea la directory se non esiste; restituisce true se è stata creata
+    private static boolean createDirectory(File dir) {
+        if (dir.exists()) return false;
+        return dir.mkdirs();
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+    //contenuto della directory di un progetto letto durante il recovery
+    private static class RestoredProject {
+        private ArrayList<String> members;
+        private final ArrayList<Card> cards = new ArrayList<>();
+    }
+
+}
@@ -0,0 +1,37 @@
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public final class JsonSupport {
+
+    /* OVERVIEW: raccoglie gli oggetti Jackson usati dal server WORTH per leggere e scrivere in JSON
+     *           utenti, card e liste dei membri. Tutti derivano da un unico ObjectMapper, così i
+     *           serializzatori di User e Card vengono costruiti una sola volta; ObjectReader e
+     *           ObjectWriter sono immutabili, quindi possono essere usati in modo concorrente
+     *           da tutti i thread senza sincronizzazione */
+
+    private final static ObjectMapper MAPPER = new ObjectMapper();
+
+    //lettori
+    public final static ObjectReader USER_READER = MAPPER.readerFor(User.class);
+    public final static ObjectReader USERS_READER = MAPPER.readerFor(new TypeReference<ArrayList<User>>() {});
+    public final static ObjectReader CARD_READER = MAPPER.readerFor(Card.class);
+    public final static ObjectReader MEMBERS_READER = MAPPER.readerFor(new TypeReference<ArrayList<String>>() {});
+
+    //scrittori compatti, usati per i record del write-ahead log
+    public final static ObjectWriter USER_WRITER = MAPPER.writerFor(User.class);
+    public final static ObjectWriter CARD_WRITER = MAPPER.writerFor(Card.class);
+    public final static ObjectWriter MEMBERS_WRITER = MAPPER.writerFor(new TypeReference<List<String>>() {});
+
+    //scrittori con indentazione, usati per i file della directory di recovery
+    public final static ObjectWriter USERS_FILE_WRITER = MAPPER.writerFor(new TypeReference<List<User>>() {}).withDefaultPrettyPrinter();
+    public final static ObjectWriter CARD_FILE_WRITER = CARD_WRITER.withDefaultPrettyPrinter();
+    public final static ObjectWriter MEMBERS_FILE_WRITER = MEMBERS_WRITER.withDefaultPrettyPrinter();
+
+    private JsonSupport() {}
+
+}
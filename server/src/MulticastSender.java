@@ -0,0 +1,241 @@
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardProtocolFamily;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class MulticastSender implements Runnable {
+
+    /* OVERVIEW: modella un mittente di messaggi multicast condiviso: un unico DatagramChannel, aperto una
+     *           volta sola, da cui un thread dedicato invia i messaggi accodati, uno per send(). Chi invia
+     *           un messaggio lo codifica in un buffer diretto preso da un pool e lo accoda senza mai
+     *           bloccarsi; se la coda è piena il messaggio viene scartato.
+     *           I datagrammi (interi big-endian, messaggi in UTF-8) hanno una delle due forme
+     *              <1 (byte)><gruppo (4 byte)><numero di sequenza (long)><messaggio>
+     *              <2 (byte)><gruppo (4 byte)><numero di messaggi (short)> { <numero di sequenza (long)><lunghezza (short)><messaggio> }
+     *           dove il gruppo è l'indirizzo IPv4 di multicast della chat a cui è destinato il datagramma (tutte
+     *           le chat usano la stessa porta, quindi il client lo usa per smistare i datagrammi ricevuti su un
+     *           unico canale) e il numero di sequenza è quello assegnato al messaggio dalla storia della chat
+     *           (vedi ChatHistory); la seconda raccoglie più notifiche di sistema in un datagramma lungo al più
+     *           mtu byte (vedi NotificationAggregator)
+     *              - channel: canale da cui vengono inviati tutti i datagrammi
+     *              - queue: datagrammi in attesa di essere inviati, in ordine di invio
+     *              - pool: buffer diretti già usati, riutilizzati per i datagrammi successivi
+     *              - dropped: numero di datagrammi scartati perché la coda era piena
+     *              - mtu: dimensione massima dei datagrammi che raccolgono più messaggi
+     *              - window: intervallo (in ms) in cui gli aggregatori raccolgono le notifiche di sistema
+     *              - timer: thread che invia le notifiche raccolte dagli aggregatori allo scadere dell'intervallo */
+
+    //tipi di datagramma: un singolo messaggio o più messaggi
+    public final static byte MESSAGE = 1;
+    public final static byte BATCH = 2;
+
+    private final static int GROUP_DIMENSION = 4;
+    private final static int HEADER_DIMENSION = 1 + GROUP_DIMENSION + Long.BYTES;
+    private final static int EVENT_HEADER_DIMENSION = Long.BYTES + Short.BYTES;
+    private final static int BUFFER_DIMENSION = 8 * 1024;
+    private final static int POOL_DIMENSION = 256;
+    private final static ThreadLocal<CharsetEncoder> ENCODER = ThreadLocal.withInitial(() -> StandardCharsets.UTF_8.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE));
+
+    private final DatagramChannel channel;
+    private final ArrayBlockingQueue<Packet> queue;
+    private final ConcurrentLinkedQueue<ByteBuffer> pool;
+    private final AtomicLong dropped;
+    private final int mtu;
+    private final int window;
+    private final ScheduledExecutorService timer;
+
+                                        //METODO COSTRUTTORE
+
+    /* REQUIRES: capacity > 0 && mtu tra 64 e 8192 && window >= 0
+     * EFFECTS: apre il canale e avvia il thread che invia i datagrammi, accodandone al più <capacity>;
+     *          gli aggregatori creati dal mittente raccolgono le notifiche per <window> ms (0 per non raccoglierle)
+     * THROWS: IOException se non è possibile aprire il canale */
+    public MulticastSender(int capacity, int mtu, int window) throws IOException {
+        if (capacity <= 0) throw new IllegalArgumentException("Invalid queue size");
+        if (mtu < 64 || mtu > BUFFER_DIMENSION) throw new IllegalArgumentException("Invalid MTU");
+        if (window < 0) throw new IllegalArgumentException("Invalid notification window");
+        this.channel = DatagramChannel.open(StandardProtocolFamily.INET);
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.pool = new ConcurrentLinkedQueue<>();
+        this.dropped = new AtomicLong();
+        this.mtu = mtu;
+        this.window = window;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "notification-timer");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        Thread thread = new Thread(this, "multicast-sender");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI D'ISTANZA
+
+    /* REQUIRES: message != null && target != null
+     * EFFECTS: accoda il messaggio con numero di sequenza <sequence> per l'invio a <target>; non si blocca mai
+     * RETURN: false se il messaggio è stato scartato perché la coda è piena, true altrimenti */
+    public boolean send(long sequence, String message, InetSocketAddress target) {
+        if (message == null) throw new NullPointerException("Invalid message");
+        if (target == null) throw new NullPointerException("Invalid address");
+        return submit(encode(sequence, message, group(target)), target);
+    }
+
+    /* REQUIRES: sequences != null && messages != null && 0 <= count <= sequences.length, messages.length && target != null
+     * EFFECTS: accoda i primi <count> messaggi, in ordine, per l'invio a <target>, raccolti nel minor numero di
+     *          datagrammi lunghi al più mtu byte; un messaggio che da solo supera mtu byte viene inviato in un
+     *          datagramma a sé. Non si blocca mai
+     * RETURN: false se almeno un datagramma è stato scartato perché la coda è piena, true altrimenti */
+    public boolean send(long[] sequences, String[] messages, int count, InetSocketAddress target) {
+        if (sequences == null || messages == null) throw new NullPointerException("Invalid messages");
+        if (count < 0 || count > sequences.length || count > messages.length) throw new IllegalArgumentException("Invalid number of messages");
+        if (target == null) throw new NullPointerException("Invalid address");
+        CharsetEncoder encoder = ENCODER.get();
+        byte[] group = group(target);
+        boolean sent = true;
+        int next = 0;
+        while (next < count) {
+            ByteBuffer buffer = acquire();
+            buffer.limit(mtu);
+            buffer.put(BATCH).put(group).putShort((short) 0);
+            int packed = 0;
+            while (next < count && buffer.remaining() > EVENT_HEADER_DIMENSION) {
+                int start = buffer.position();
+                buffer.putLong(sequences[next]).putShort((short) 0);
+                encoder.reset();
+                if (encoder.encode(CharBuffer.wrap(messages[next]), buffer, true).isOverflow() || encoder.flush(buffer).isOverflow()) {
+                    //il messaggio non entra nel datagramma: verrà inviato nel successivo
+                    buffer.position(start);
+                    break;
+                }
+                buffer.putShort(start + Long.BYTES, (short) (buffer.position() - start - EVENT_HEADER_DIMENSION));
+                packed++;
+                next++;
+            }
+            if (packed == 0) {
+                //messaggio più lungo di mtu byte
+                release(buffer);
+                sent &= send(sequences[next], messages[next], target);
+                next++;
+                continue;
+            }
+            buffer.putShort(1 + GROUP_DIMENSION, (short) packed);
+            buffer.flip();
+            sent &= submit(buffer, target);
+        }
+        return sent;
+    }
+
+    /* REQUIRES: target != null
+     * EFFECTS: crea l'aggregatore delle notifiche dirette a <target> (di solito uno per progetto) */
+    public NotificationAggregator newAggregator(InetSocketAddress target) {
+        return new NotificationAggregator(this, target, window, timer);
+    }
+
+    //RETURN: il numero di datagrammi scartati perché la coda era piena
+    public long getDropped() { return dropped.get(); }
+
+    @Override
+    //EFFECTS: invia i datagrammi accodati, uno per send()
+    public void run() {
+        while (true) {
+            Packet packet;
+            try {
+                packet = queue.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            try {
+                channel.send(packet.buffer, packet.target);
+            } catch (IOException e) {
+                System.out.println("Impossibile mandare il messaggio");
+            }
+            release(packet.buffer);
+        }
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI AUSILIARI
+
+    //EFFECTS: accoda il datagramma (pronto per la lettura), o lo scarta se la coda è piena
+    private boolean submit(ByteBuffer buffer, InetSocketAddress target) {
+        if (queue.offer(new Packet(buffer, target))) return true;
+        release(buffer);
+        dropped.incrementAndGet();
+        return false;
+    }
+
+    //restituisce un buffer diretto vuoto, preso dal pool se possibile
+    private ByteBuffer acquire() {
+        ByteBuffer buffer = pool.poll();
+        if (buffer == null) buffer = ByteBuffer.allocateDirect(BUFFER_DIMENSION);
+        buffer.clear();
+        return buffer;
+    }
+
+    //restituisce un buffer (pronto per la lettura) con l'intestazione e il messaggio codificato in UTF-8
+    private ByteBuffer encode(long sequence, String message, byte[] group) {
+        CharsetEncoder encoder = ENCODER.get().reset();
+        ByteBuffer buffer = acquire();
+        buffer.put(MESSAGE).put(group).putLong(sequence);
+        CharBuffer chars = CharBuffer.wrap(message);
+        CoderResult result = encoder.encode(chars, buffer, true);
+        if (result.isOverflow()) {
+            //messaggio più grande di un buffer del pool: viene usato un buffer dedicato
+            release(buffer);
+            chars.rewind();
+            buffer = ByteBuffer.allocate(HEADER_DIMENSION + (int) (message.length() * encoder.maxBytesPerChar()));
+            buffer.put(MESSAGE).put(group).putLong(sequence);
+            encoder.reset().encode(chars, buffer, true);
+        }
+        encoder.flush(buffer);
+        buffer.flip();
+        return buffer;
+    }
+
+    //EFFECTS: restituisce al pool un buffer diretto, se il pool non è pieno
+    private void release(ByteBuffer buffer) {
+        if (buffer.isDirect() && buffer.capacity() == BUFFER_DIMENSION && pool.size() < POOL_DIMENSION) pool.offer(buffer);
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //FUNZIONI AUSILIARIE
+
+    //restituisce i 4 byte dell'indirizzo di multicast (IPv4) di <target>, che identificano la chat nei datagrammi
+    private static byte[] group(InetSocketAddress target) {
+        byte[] group = target.getAddress().getAddress();
+        if (group.length != GROUP_DIMENSION) throw new IllegalArgumentException("Invalid multicast address");
+        return group;
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+    //datagramma in attesa di essere inviato
+    private static class Packet {
+        private final ByteBuffer buffer;
+        private final InetSocketAddress target;
+
+        private Packet(ByteBuffer buffer, InetSocketAddress target) {
+            this.buffer = buffer;
+            this.target = target;
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+public class NotificationAggregator {
+
+    /* OVERVIEW: raccoglie le notifiche di sistema dirette alla chat di un progetto per un breve intervallo
+     *           e le invia insieme, nel minor numero di datagrammi lunghi al più mtu byte (vedi
+     *           MulticastSender), così una raffica di spostamenti di card non diventa una raffica di
+     *           piccoli datagrammi. La prima notifica raccolta avvia il timer dell'intervallo; i messaggi
+     *           da inviare subito (messaggi degli utenti e cancellazione del progetto) vengono preceduti
+     *           dalle notifiche raccolte, così i client li ricevono in ordine
+     *              - sender: mittente condiviso con cui vengono inviati i datagrammi
+     *              - target: indirizzo di multicast della chat del progetto
+     *              - window: intervallo (in ms) in cui vengono raccolte le notifiche; 0 se non vengono raccolte
+     *              - timer: thread che invia le notifiche raccolte allo scadere dell'intervallo
+     *              - sequences & messages: notifiche raccolte, con i loro numeri di sequenza
+     *              - count: numero di notifiche raccolte
+     *              - scheduled: true se il timer dell'intervallo è già stato avviato */
+
+    private final static int MAX_PENDING = 256;
+
+    private final MulticastSender sender;
+    private final InetSocketAddress target;
+    private final int window;
+    private final ScheduledExecutorService timer;
+    private final long[] sequences;
+    private final String[] messages;
+    private int count;
+    private boolean scheduled;
+
+                                        //METODO COSTRUTTORE
+
+    /* REQUIRES: sender != null && target != null && window >= 0 && timer != null
+     * EFFECTS: crea un aggregatore vuoto (vedi MulticastSender.newAggregator) */
+    NotificationAggregator(MulticastSender sender, InetSocketAddress target, int window, ScheduledExecutorService timer) {
+        if (sender == null) throw new NullPointerException("Invalid sender");
+        if (target == null) throw new NullPointerException("Invalid address");
+        if (timer == null) throw new NullPointerException("Invalid timer");
+        if (window < 0) throw new IllegalArgumentException("Invalid notification window");
+        this.sender = sender;
+        this.target = target;
+        this.window = window;
+        this.timer = timer;
+        this.sequences = new long[MAX_PENDING];
+        this.messages = new String[MAX_PENDING];
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI D'ISTANZA
+
+    /* REQUIRES: message != null
+     * EFFECTS: raccoglie la notifica, che verrà inviata allo scadere dell'intervallo o quando ne saranno
+     *          state raccolte MAX_PENDING; se window == 0 la invia subito */
+    public synchronized void publish(long sequence, String message) {
+        if (message == null) throw new NullPointerException("Invalid message");
+        if (window == 0) {
+            report(sender.send(sequence, message, target));
+            return;
+        }
+        sequences[count] = sequence;
+        messages[count] = message;
+        count++;
+        if (count == MAX_PENDING) flushPending();
+        else if (!scheduled) {
+            scheduled = true;
+            timer.schedule(this::flush, window, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /* REQUIRES: message != null
+     * EFFECTS: invia le notifiche raccolte e subito dopo il messaggio */
+    public synchronized void publishNow(long sequence, String message) {
+        if (message == null) throw new NullPointerException("Invalid message");
+        flushPending();
+        report(sender.send(sequence, message, target));
+    }
+
+    //EFFECTS: invia le notifiche raccolte (invocato allo scadere dell'intervallo)
+    public synchronized void flush() {
+        scheduled = false;
+        flushPending();
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI AUSILIARI
+
+    //EFFECTS: invia le notifiche raccolte e svuota l'aggregatore (da invocare sul monitor dell'aggregatore)
+    private void flushPending() {
+        if (count == 0) return;
+        report(sender.send(sequences, messages, count, target));
+        Arrays.fill(messages, 0, count, null);
+        count = 0;
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //FUNZIONI AUSILIARIE
+
+    //EFFECTS: segnala i datagrammi scartati dal mittente
+    private static void report(boolean sent) {
+        if (!sent) System.out.println("Impossibile mandare il messaggio");
+    }
+
+}
@@ -4,7 +4,15 @@ import java.util.HashMap;
 
 public interface NotifyManagerInterface extends Remote {
 
-     /* EFFECTS: aggiorna la lista degli utenti (con i relativi stati) che il client mantiene localmente
+     /* EFFECTS: sostituisce la lista degli utenti (con i relativi stati) che il client mantiene localmente
+      *          con quella inviata dal server, aggiornata alla versione <version>
       * THROWS:  RemoteException se si verificano errori durante l'esecuzione della chiamata remota */
-     void notifyUpdate (HashMap<String, String> users)throws RemoteException;
+     void notifyUpdate (HashMap<String, String> users, long version) throws RemoteException;
+
+     /* EFFECTS: aggiorna lo stato dell'utente <username> nella lista che il client mantiene localmente,
+      *          se <version> è la versione successiva all'ultima ricevuta
+      * THROWS:  RemoteException se si verificano errori durante l'esecuzione della chiamata remota
+      * RETURN:  false se il client ha perso delle notifiche precedenti e deve ricevere l'intera lista
+      *          (vedi notifyUpdate), true altrimenti */
+     boolean notifyUserChange (String username, String state, long version) throws RemoteException;
 }
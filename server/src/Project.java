@@ -1,50 +1,74 @@
-import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.SerializationFeature;
-
-import java.awt.desktop.SystemSleepEvent;
-import java.io.File;
-import java.io.IOException;
-import java.net.DatagramPacket;
-import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.NoSuchElementException;
-import java.util.function.BiFunction;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 public class Project {
 
-    /* OVERVIEW: modella i progetti WORTH
+    /* OVERVIEW: modella i progetti WORTH; ogni progetto ha un proprio lock, così le operazioni
+     *           su progetti diversi non si contendono mai il lock, e i comandi di sola lettura
+     *           sullo stesso progetto vengono eseguiti in parallelo
      *              - name: nome del progetto
      *              - members: insieme dei nomi dei membri del progetto
-     *              - group & port: indirizzo di multicast della chat del progetto */
+     *              - cards: associazione <nome, card> di tutte le card del progetto, usata per
+     *                  trovare una card senza scorrere le liste
+     *              - toDo, inProgress, toBeRevised, done: liste del flusso di lavoro, indicizzate per
+     *                  nome della card; mantengono l'ordine di inserimento e permettono di
+     *                  rimuovere una card in tempo costante
+     *              - group & port: indirizzo di multicast della chat del progetto
+     *              - notifications: aggregatore con cui vengono inviati i messaggi sulla chat; le notifiche
+     *                  di sistema vengono raccolte per un breve intervallo e inviate insieme
+     *              - history: ultimi messaggi inviati sulla chat, numerati, che i client possono recuperare
+     *              - storage: meccanismo di persistenza in cui vengono salvati membri e card
+     *              - lock: lock in lettura/scrittura che protegge membri e card del progetto
+     *              - cancelled: true se il progetto è stato cancellato; da quel momento ogni
+     *                  modifica viene rifiutata, anche se un comando aveva già trovato il progetto */
 
     private String name;
     private ArrayList<String> members;
 
+    private final HashMap<String, Card> cards;
+
     //liste che definiscono il flusso di lavoro
-    private ArrayList<Card> toDo;
-    private ArrayList<Card> inProgress;
-    private ArrayList<Card> toBeRevised;
-    private ArrayList<Card> done;
+    private final LinkedHashMap<String, Card> toDo;
+    private final LinkedHashMap<String, Card> inProgress;
+    private final LinkedHashMap<String, Card> toBeRevised;
+    private final LinkedHashMap<String, Card> done;
 
     private InetAddress group;
     private int port;
+    private InetSocketAddress address;
+    private NotificationAggregator notifications;
+    private final ChatHistory history;
+
+    private final Storage storage;
+    private final ReentrantReadWriteLock lock;
+    private boolean cancelled;
 
                                         //METODI COSTRUTTORE
 
-    public Project(String name, String creator, String multicastAddress) {
+    public Project(String name, String creator, String multicastAddress, Storage storage, MulticastSender sender, int historySize) {
 
         if (name == null) throw new NullPointerException("Invalid project name");
         if (creator == null) throw new NullPointerException("Invalid creator");
+        if (storage == null) throw new NullPointerException("Invalid storage");
+        if (sender == null) throw new NullPointerException("Invalid sender");
         this.name = name;
         this.members = new ArrayList<>();
         this.members.add(creator);
-        this.toDo= new ArrayList<>();
-        this.inProgress = new ArrayList<>();
-        this.toBeRevised = new ArrayList<>();
-        this.done = new ArrayList<>();
+        this.cards = new HashMap<>();
+        this.toDo= new LinkedHashMap<>();
+        this.inProgress = new LinkedHashMap<>();
+        this.toBeRevised = new LinkedHashMap<>();
+        this.done = new LinkedHashMap<>();
+        this.storage = storage;
+        this.history = new ChatHistory(historySize);
+        this.lock = new ReentrantReadWriteLock();
 
         try {
             group = InetAddress.getByName(multicastAddress);
@@ -52,18 +76,26 @@ public class Project {
             e.printStackTrace();
         }
         port = 4000;
-        saveMembers(this);
+        address = new InetSocketAddress(group, port);
+        notifications = sender.newAggregator(address);
+        storage.saveMembers(name, members);
     }
 
-    public Project(String name, String multicastAddress) {
+    public Project(String name, String multicastAddress, Storage storage, MulticastSender sender, int historySize) {
 
         if (name == null) throw new NullPointerException("Invalid project name");
+        if (storage == null) throw new NullPointerException("Invalid storage");
+        if (sender == null) throw new NullPointerException("Invalid sender");
         this.name = name;
         this.members = new ArrayList<>();
-        this.toDo= new ArrayList<>();
-        this.inProgress = new ArrayList<>();
-        this.toBeRevised = new ArrayList<>();
-        this.done = new ArrayList<>();
+        this.cards = new HashMap<>();
+        this.toDo= new LinkedHashMap<>();
+        this.inProgress = new LinkedHashMap<>();
+        this.toBeRevised = new LinkedHashMap<>();
+        this.done = new LinkedHashMap<>();
+        this.storage = storage;
+        this.history = new ChatHistory(historySize);
+        this.lock = new ReentrantReadWriteLock();
 
         try {
             group = InetAddress.getByName(multicastAddress);
@@ -71,6 +103,8 @@ public class Project {
             e.printStackTrace();
         }
         port = 4000;
+        address = new InetSocketAddress(group, port);
+        notifications = sender.newAggregator(address);
     }
 
     //-------------------------------------------------------------------------------------//
@@ -79,15 +113,15 @@ public class Project {
 
     public String getName() { return name; }
 
-    public ArrayList<String> getMembers() { return members; }
-
-    public ArrayList<Card> getToDo() { return toDo; }
-
-    public ArrayList<Card> getInProgress() { return inProgress; }
-
-    public ArrayList<Card> getToBeRevised() { return toBeRevised; }
-
-    public ArrayList<Card> getDone() { return done; }
+    //RETURN: una copia della lista dei membri del progetto
+    public ArrayList<String> getMembers() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(members);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
 
     public InetAddress getGroup() {
         return group;
@@ -97,7 +131,14 @@ public class Project {
         return port;
     }
 
-    public void setMembers(ArrayList<String> members) { this.members = members; }
+    public void setMembers(ArrayList<String> members) {
+        lock.writeLock().lock();
+        try {
+            this.members = members;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
 
     //-------------------------------------------------------------------------------------//
 
@@ -110,31 +151,48 @@ public class Project {
      * RETURN: true se user appartiene members, false altrimenti */
     public boolean isMember (String user){
         if (user == null) throw new NullPointerException("Invalid user name");
-        for (String member: members) {
-            if (member.equals(user)){
-                return true;
+        lock.readLock().lock();
+        try {
+            for (String member: members) {
+                if (member.equals(user)){
+                    return true;
+                }
             }
+            return false;
+        } finally {
+            lock.readLock().unlock();
         }
-        return false;
     }
 
     /* REQUIRES: member != null
      * EFFECTS: aggiunge member alla lista dei membri e salva le modifiche su members.json
      * THROWS: - NullPointerException se member == null
-     *         - ExistingNameException se member è già presente nella lista dei membri */
+     *         - ExistingNameException se member è già presente nella lista dei membri
+     *         - NoSuchElementException se il progetto è stato cancellato */
     public void addMember (String member) throws ExistingNameException {
         if (member == null) throw new NullPointerException("Invalid user name");
-        if (this.members.contains(member)) throw new ExistingNameException("Member already added");
-        this.members.add(member);
-        saveMembers(this);
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (this.members.contains(member)) throw new ExistingNameException("Member already added");
+            this.members.add(member);
+            storage.saveMembers(name, members);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /* EFFECTS: crea una stringa contente la lista dei membri del progetto
      * RETURN: la lista dei membri del progetto */
     public String showMembers (){
         StringBuilder list = new StringBuilder();
-        for (String member: members) {
-            list.append(member).append(" ");
+        lock.readLock().lock();
+        try {
+            for (String member: members) {
+                list.append(member).append(" ");
+            }
+        } finally {
+            lock.readLock().unlock();
         }
         return list.toString();
     }
@@ -143,19 +201,22 @@ public class Project {
      * RETURN: la lista di tutte le stringhe del progetto */
     public String showCards (){
         StringBuilder list = new StringBuilder();
+        lock.readLock().lock();
+        try {
+            list.append("TO DO: ");
+            appendList(list, toDo);
 
-        list.append("TO DO: ");
-        appendList(list, toDo);
-
-        list.append("IN PROGRESS: ");
-        appendList(list, inProgress);
-
-        list.append("TO BE REVISED: ");
-        appendList(list, toBeRevised);
+            list.append("IN PROGRESS: ");
+            appendList(list, inProgress);
 
-        list.append("DONE: ");
-        appendList(list, done);
+            list.append("TO BE REVISED: ");
+            appendList(list, toBeRevised);
 
+            list.append("DONE: ");
+            appendList(list, done);
+        } finally {
+            lock.readLock().unlock();
+        }
         return list.toString();
     }
 
@@ -166,9 +227,14 @@ public class Project {
      * RETURN: nome, descrizione e lista della card*/
     public String showCard (String cardName) {
         if (cardName == null) throw new NullPointerException("Invalid card name");
-        Card card = getCard(cardName, this::searchCard);
-        if (card == null) throw new NoSuchElementException("Card not found");
-        return card.getInformation();
+        lock.readLock().lock();
+        try {
+            Card card = cards.get(cardName);
+            if (card == null) throw new NoSuchElementException("Card not found");
+            return card.getInformation();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /* REQUIRES: cardName != null
@@ -177,11 +243,14 @@ public class Project {
      *         - ExistingNameException se la card è già presente
      * RETURN: */
     public void addCard (String cardName, String description) throws ExistingNameException {
-        if (cardName == null) throw new NullPointerException("Invalid card name");
-        if (getCard(cardName, this::searchCard) != null) throw new ExistingNameException("Card already exists");
-        Card card = new Card(cardName, description);
-        toDo.add(card);
-        saveCard(this.name, card );
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            Card card = insertCard(cardName, description);
+            storage.saveCard(name, card);
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     /* REQUIRES: cardName != null && listaPartenza != null && listaDestinazione != null
@@ -189,6 +258,108 @@ public class Project {
      * THROWS: - NullPointerException se cardName == nulla || listaPartenza == null || listaDestinazione == null
      *         - IllegalArgumentException se "listaPartenza" e "listaDestinazione" non rispettano i vincoli della specifica */
     public void moveCard (String cardName, String listaPartenza,  String listaDestinazione){
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            Card card = transferCard(cardName, listaPartenza, listaDestinazione);
+            storage.saveCard(name, card);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        //la notifica viene mandata dopo aver rilasciato il lock
+        sendMessage("Card "+ cardName +" moved from " + listaPartenza + " to " + listaDestinazione);
+    }
+
+    /* REQUIRES: operations != null
+     * EFFECTS: applica in sequenza le operazioni indicate, ognuna nella forma
+     *          ["add_card", cardName, descrizione...] oppure ["move_card", cardName, listaPartenza, listaDestinazione];
+     *          le card modificate vengono salvate in un'unica passata al termine del batch e ai membri
+     *          viene mandata un'unica notifica. Un'operazione non valida non interrompe il batch.
+     * THROWS: NullPointerException se operations == null
+     * RETURN: il riepilogo del batch e gli eventuali errori, uno per riga */
+    public String applyBatch (List<String[]> operations){
+        if (operations == null) throw new NullPointerException("Invalid operations");
+        LinkedHashMap<String, Card> modified = new LinkedHashMap<>();
+        StringBuilder errors = new StringBuilder();
+        int added = 0, moved = 0;
+
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            for (int i = 0; i < operations.size(); i++) {
+                String[] operation = operations.get(i);
+                try {
+                    switch (operation[0]) {
+                        case "add_card": {
+                            if (operation.length < 3) throw new IllegalArgumentException("Use: add_card <cardName> <description>");
+                            Card card = insertCard(operation[1], joinFrom(operation, 2));
+                            modified.put(card.getName(), card);
+                            added++;
+                            break;
+                        }
+                        case "move_card": {
+                            if (operation.length != 4) throw new IllegalArgumentException("Use: move_card <cardName> <startingList> <destinationList>");
+                            Card card = transferCard(operation[1], operation[2].toLowerCase(), operation[3].toLowerCase());
+                            modified.put(card.getName(), card);
+                            moved++;
+                            break;
+                        }
+                        default:
+                            throw new IllegalArgumentException("Command not found");
+                    }
+                } catch (Exception e) {
+                    errors.append("Operation ").append(i + 1).append(": ").append(e.getMessage()).append(System.lineSeparator());
+                }
+            }
+
+            if (!modified.isEmpty()) storage.saveCards(name, modified.values());
+        } finally {
+            lock.writeLock().unlock();
+        }
+        if (added + moved > 0) sendMessage("Batch: " + added + " cards added, " + moved + " cards moved");
+        return "Batch applied to " + name + ": " + added + " cards added, " + moved + " cards moved" + System.lineSeparator() + errors;
+    }
+
+    /* REQUIRES: card != null
+     * EFFECTS: inserisce una card letta dai file di recovery nella lista indicata dall'ultimo stato della sua storia
+     * THROWS: - NullPointerException se card == null
+     *         - ExistingNameException se la card è già presente */
+    public void restoreCard (Card card) throws ExistingNameException {
+        if (card == null) throw new NullPointerException("Invalid card");
+        lock.writeLock().lock();
+        try {
+            if (cards.putIfAbsent(card.getName(), card) != null) throw new ExistingNameException("Card already exists");
+            ArrayList<CardState> story = card.getStory();
+            switch (story.get(story.size()-1)){
+                case ToDo: toDo.put(card.getName(), card); break;
+                case InProgress: inProgress.put(card.getName(), card); break;
+                case ToBeRevised: toBeRevised.put(card.getName(), card); break;
+                case Done: done.put(card.getName(), card); break;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /* EFFECTS: crea la card "cardName" con descrizione "description" e la inserisce nella lista toDo
+     * THROWS: - NullPointerException se cardName == null
+     *         - ExistingNameException se la card è già presente
+     * RETURN: la card creata */
+    private Card insertCard (String cardName, String description) throws ExistingNameException {
+        if (cardName == null) throw new NullPointerException("Invalid card name");
+        if (cards.containsKey(cardName)) throw new ExistingNameException("Card already exists");
+        Card card = new Card(cardName, description);
+        cards.put(cardName, card);
+        toDo.put(cardName, card);
+        return card;
+    }
+
+    /* EFFECTS: sposta la card da "listaPartenza" a "listaDestinazione" e aggiorna la sua storia
+     * THROWS: - NullPointerException se cardName == nulla || listaPartenza == null || listaDestinazione == null
+     *         - IllegalArgumentException se "listaPartenza" e "listaDestinazione" non rispettano i vincoli della specifica
+     *         - NoSuchElementException se la card non si trova in "listaPartenza"
+     * RETURN: la card spostata */
+    private Card transferCard (String cardName, String listaPartenza,  String listaDestinazione){
         if (cardName == null) throw new NullPointerException("Invalid card name");
         if (listaPartenza == null) throw new NullPointerException("Invalid starting list");
         if (listaDestinazione == null) throw new NullPointerException("Invalid destination list");
@@ -208,30 +379,29 @@ public class Project {
 
         Card card = null;
         switch (listaPartenza) {
-            case "todo" : card = removeCard(cardName, toDo); break;
-            case "inprogress" : card = removeCard(cardName, inProgress); break;
-            case "toberevised" : card = removeCard(cardName, toBeRevised); break;
+            case "todo" : card = toDo.remove(cardName); break;
+            case "inprogress" : card = inProgress.remove(cardName); break;
+            case "toberevised" : card = toBeRevised.remove(cardName); break;
         }
         if (card == null) throw new NoSuchElementException("Card not found");
         switch (listaDestinazione) {
             case "inprogress" : {
                 card.addToStory(CardState.InProgress);
-                inProgress.add(card);
+                inProgress.put(cardName, card);
                 break;
             }
             case "toberevised" : {
                 card.addToStory(CardState.ToBeRevised);
-                toBeRevised.add(card);
+                toBeRevised.put(cardName, card);
                 break;
             }
             case "done" : {
                 card.addToStory(CardState.Done);
-                done.add(card);
+                done.put(cardName, card);
                 break;
             }
         }
-        sendMessage("Card "+ cardName +" moved from " + listaPartenza + " to " + listaDestinazione);
-        saveCard(this.name, card );
+        return card;
     }
 
     /* REQUIRES: cardName != null
@@ -241,104 +411,103 @@ public class Project {
      * RETURN: la "storia della card" */
     public String getCardHistory (String cardName){
         if (cardName == null) throw new NullPointerException("Invalid card name");
-        Card card = getCard(cardName, this::searchCard);
-        if (card == null) throw new NoSuchElementException("Card not found");
-        return card.getHistory();
+        lock.readLock().lock();
+        try {
+            Card card = cards.get(cardName);
+            if (card == null) throw new NoSuchElementException("Card not found");
+            return card.getHistory();
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
     /* EFFECTS: controlla se il progetto è terminato
      * RETURN: true se il progetto è terminato, false altrimenti*/
     public boolean isDone (){
-        return toDo.size() == 0 && inProgress.size() == 0 && toBeRevised.size() == 0;
+        lock.readLock().lock();
+        try {
+            return toDo.size() == 0 && inProgress.size() == 0 && toBeRevised.size() == 0;
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    /* EFFECTS: manda un messaggio in multicast a tutti i membri del progetto */
-    public void sendMessage (String message){
-        try (DatagramSocket socket = new DatagramSocket()){
-            byte[] buffer = ("System: "+ message).getBytes(StandardCharsets.UTF_8);
-            DatagramPacket packetToSend = new DatagramPacket(buffer, buffer.length, group, port);
-            socket.send(packetToSend);
-
-        } catch (IOException e) {
-            System.out.println("Impossibile mandare il messaggio");
+    /* EFFECTS: segna il progetto come cancellato, se tutte le sue card sono nella lista "done";
+     *          da questo momento ogni modifica del progetto viene rifiutata
+     * THROWS: - IllegalArgumentException se ci sono card non ancora nella lista "done"
+     *         - NoSuchElementException se il progetto è già stato cancellato */
+    public void cancel (){
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+            if (!isDone()) throw new IllegalArgumentException("The project can be cancel if all the cards have been done");
+            cancelled = true;
+        } finally {
+            lock.writeLock().unlock();
         }
     }
 
-    //-------------------------------------------------------------------------------------//
-
-                                        //FUNZIONI AUSILIARIE
+    /* EFFECTS: manda un messaggio di sistema in multicast a tutti i membri del progetto; il messaggio viene
+     *          solo raccolto dall'aggregatore, quindi il metodo non si blocca mai */
+    public void sendMessage (String message){
+        post("System: " + message, false);
+    }
 
-    //funzione di ordine superiore che cerca una card in tutte le liste e se la trova la restituisce
-    private Card getCard (String cardName, BiFunction<String, ArrayList<Card>, Card> function){
-        Card tmp;
+    /* EFFECTS: manda subito in multicast a tutti i membri del progetto il messaggio di chiusura della chat,
+     *          dopo le notifiche già raccolte */
+    public void closeChat (){
+        post("System: close", true);
+    }
 
-        if ((tmp = function.apply(cardName, toDo) ) != null) return tmp;
-        if ((tmp = function.apply(cardName, inProgress) ) != null) return tmp;
-        if ((tmp = function.apply(cardName, toBeRevised) ) != null) return tmp;
-        if ((tmp = function.apply(cardName, done) ) != null) return tmp;
+    /* REQUIRES: user != null && message != null
+     * EFFECTS: manda in multicast a tutti i membri del progetto il messaggio <message> dell'utente <user>
+     * THROWS: NullPointerException se user == null || message == null */
+    public void sendChatMessage (String user, String message){
+        if (user == null) throw new NullPointerException("Invalid username");
+        if (message == null) throw new NullPointerException("Invalid message");
+        post(user + ": " + message, true);
+    }
 
-        return null;
+    //EFFECTS: restituisce i messaggi della chat ancora conservati con numero di sequenza maggiore di <after>
+    public String readChat (long after){
+        return history.readAfter(after);
     }
 
-    //funzione che rimuove una card da listCard e la restituisce
-    private Card removeCard (String cardName, ArrayList<Card> listCard){
-        for (int i=0; i< listCard.size(); i++){
-            Card tmp = listCard.get(i);
-            if (tmp.getName().equals(cardName)){
-                listCard.remove(i);
-                return tmp;
-            }
+    /* EFFECTS: aggiunge il messaggio alla storia della chat e lo passa all'aggregatore con il numero di sequenza
+     *          assegnato, da inviare subito se <immediate>; i messaggi vengono inviati nell'ordine dei numeri di sequenza */
+    private void post (String text, boolean immediate){
+        synchronized (notifications) {
+            long sequence = history.append(text);
+            if (immediate) notifications.publishNow(sequence, text);
+            else notifications.publish(sequence, text);
         }
-        return null;
     }
 
-    //funzione che cerca una card in una lista specifica e la restituisce (senza rimuoverla)
-    private Card searchCard (String cardName, ArrayList<Card> listCard) {
-        for (Card tmp : listCard) {
-            if (tmp.getName().equals(cardName)) {
-                return tmp;
-            }
-        }
-        return null;
+    //THROWS: NoSuchElementException se il progetto è stato cancellato (da invocare con il lock in scrittura)
+    private void checkOpen (){
+        if (cancelled) throw new NoSuchElementException("Project not found");
     }
 
+    //-------------------------------------------------------------------------------------//
+
+                                        //FUNZIONI AUSILIARIE
+
     //funzione che crea una stringa che rappresenta una delle liste del progetto e la restituisce
-    private static StringBuilder appendList (StringBuilder list, ArrayList<Card> cardArrayList){
-        for (Card card: cardArrayList) {
-            list.append(card.getName()).append(" ");
+    private static StringBuilder appendList (StringBuilder list, LinkedHashMap<String, Card> cardList){
+        for (String cardName: cardList.keySet()) {
+            list.append(cardName).append(" ");
         }
         list.append(System.lineSeparator());
         return list;
     }
 
-    /* funzione che crea la directory di un progetto se non esiste
-       e salva i nomi dei membri del progetto su members.json */
-    private static void saveMembers (Project project){
-        File projectDir = new File("./Recovery" + File.separator + project.getName());
-
-        if (!projectDir.exists()){
-            if (projectDir.mkdir()) System.out.println("Project directory created");
-        }
-        File membersFile = new File(projectDir.getAbsolutePath() + File.separator + "members.json");
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
-        try {
-            mapper.writeValue(membersFile, project.getMembers());
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
-    }
-
-    //funzione che salva le card di un progetto nella relativa directory
-    private static void saveCard (String projectName, Card card){
-        File cardFile = new File("./Recovery" + File.separator + projectName + File.separator + card.getName()+".json");
-        ObjectMapper mapper = new ObjectMapper();
-        mapper.enable(SerializationFeature.INDENT_OUTPUT);
-        try {
-            mapper.writeValue(cardFile, card);
-        } catch (IOException e) {
-            e.printStackTrace();
+    //funzione che ricompone le parole di un'operazione a partire dalla posizione <from>
+    private static String joinFrom (String[] strings, int from){
+        StringBuilder stringBuilder = new StringBuilder();
+        for (int i = from; i < strings.length; i++) {
+            stringBuilder.append(strings[i]).append(" ");
         }
+        return stringBuilder.toString().trim();
     }
 
 }
@@ -0,0 +1,120 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class ProjectRegistry {
+
+    /* OVERVIEW: modella l'insieme dei progetti presenti nel server WORTH, indicizzati per nome,
+     *           insieme all'indice inverso dei progetti di cui ogni utente è membro; così la ricerca
+     *           di un progetto, il controllo dei diritti di accesso e list_projects non dipendono
+     *           dal numero di progetti
+     *              - projects: associazione <nome del progetto, progetto>
+     *              - memberships: associazione <username, nomi dei progetti di cui l'utente è membro>;
+     *                  ogni insieme mantiene l'ordine di inserimento ed è protetto dal proprio monitor */
+
+    private final ConcurrentHashMap<String, Project> projects;
+    private final ConcurrentHashMap<String, Set<String>> memberships;
+
+                                        //METODO COSTRUTTORE
+
+    public ProjectRegistry() {
+        this.projects = new ConcurrentHashMap<>();
+        this.memberships = new ConcurrentHashMap<>();
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI D'ISTANZA
+
+    /* REQUIRES: projectName != null
+     * EFFECTS: cerca e restituisce il progetto indicato da <projectName>;
+     *          restituisce null se tale progetto non esiste
+     * THROWS: NullPointerException se projectName == null */
+    public Project get(String projectName) {
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        return projects.get(projectName);
+    }
+
+    /* REQUIRES: project != null
+     * EFFECTS: aggiunge un nuovo progetto e indicizza i suoi membri
+     * THROWS: - NullPointerException se project == null
+     *         - ExistingNameException se esiste già un progetto con lo stesso nome */
+    public void add(Project project) throws ExistingNameException {
+        if (project == null) throw new NullPointerException("Invalid project");
+        if (projects.putIfAbsent(project.getName(), project) != null) throw new ExistingNameException("Project already exists");
+        for (String member : project.getMembers()) {
+            index(member, project.getName());
+        }
+    }
+
+    /* REQUIRES: project != null && member != null
+     * EFFECTS: aggiunge <member> ai membri del progetto (vedi Project.addMember) e all'indice inverso
+     * THROWS: - NullPointerException se project == null || member == null
+     *         - ExistingNameException se member è già membro del progetto */
+    public void addMember(Project project, String member) throws ExistingNameException {
+        if (project == null) throw new NullPointerException("Invalid project");
+        project.addMember(member);
+        index(member, project.getName());
+        //il progetto potrebbe essere stato cancellato prima dell'aggiornamento dell'indice
+        if (projects.get(project.getName()) != project) unindex(member, project.getName());
+    }
+
+    /* REQUIRES: project != null
+     * EFFECTS: rimuove il progetto e lo toglie dall'indice inverso di ogni suo membro
+     * THROWS: NullPointerException se project == null */
+    public void remove(Project project) {
+        if (project == null) throw new NullPointerException("Invalid project");
+        if (!projects.remove(project.getName(), project)) return;
+        for (String member : project.getMembers()) {
+            unindex(member, project.getName());
+        }
+    }
+
+    /* REQUIRES: user != null && projectName != null
+     * RETURN: true se <user> è membro del progetto <projectName>, false altrimenti */
+    public boolean isMember(String user, String projectName) {
+        if (user == null) throw new NullPointerException("Invalid username");
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        Set<String> names = memberships.get(user);
+        if (names == null) return false;
+        synchronized (names) {
+            return names.contains(projectName);
+        }
+    }
+
+    /* REQUIRES: user != null
+     * RETURN: i nomi dei progetti di cui <user> è membro, nell'ordine in cui vi è stato aggiunto */
+    public List<String> projectsOf(String user) {
+        if (user == null) throw new NullPointerException("Invalid username");
+        Set<String> names = memberships.get(user);
+        if (names == null) return Collections.emptyList();
+        synchronized (names) {
+            return new ArrayList<>(names);
+        }
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI AUSILIARI
+
+    //EFFECTS: aggiunge <projectName> all'insieme dei progetti di <member>
+    private void index(String member, String projectName) {
+        Set<String> names = memberships.computeIfAbsent(member, user -> new LinkedHashSet<>());
+        synchronized (names) {
+            names.add(projectName);
+        }
+    }
+
+    //EFFECTS: toglie <projectName> dall'insieme dei progetti di <member>
+    private void unindex(String member, String projectName) {
+        Set<String> names = memberships.get(member);
+        if (names == null) return;
+        synchronized (names) {
+            names.remove(projectName);
+        }
+    }
+
+}
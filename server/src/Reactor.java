@@ -0,0 +1,274 @@
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Consumer;
+
+public class Reactor implements Runnable {
+
+    /* OVERVIEW: modella uno dei thread selettori del server WORTH; ogni canale viene registrato
+     *           una sola volta e per tutta la durata della connessione il reactor si limita
+     *           ad aggiornarne le operazioni di interesse
+     *              - server: server che esegue i comandi ricevuti dai client
+     *              - config: configurazione del server (dimensione dei frame, richieste in sospeso, ...)
+     *              - selector: selettore sul quale sono registrati i canali gestiti dal reactor
+     *              - workers: pool di thread che esegue i comandi, così che il reactor si occupi solo dell'I/O
+     *              - pending: canali assegnati dall'acceptor e non ancora registrati sul selettore
+     *              - completed: richieste per le quali un worker ha preparato la risposta; la coda non è
+     *                  limitata, così un worker (condiviso da tutti i reactor) non resta mai bloccato su un
+     *                  reactor lento, ma contiene al più una richiesta per sessione, perché ogni sessione ha
+     *                  al più una richiesta in esecuzione (il limite vero è quello imposto da canRead e workQueue)
+     *              - stalled: richieste (e logout di client disconnessi) rifiutate dal pool perché la coda
+     *                  è piena, in attesa di essere sottomesse di nuovo; finché una richiesta è qui il suo
+     *                  canale non viene letto
+     *              - keyHandler: gestore delle chiavi selezionate, creato una volta sola */
+
+    private final static long STALL_RETRY_MS = 10;
+
+    private final ServerWORTH server;
+    private final ServerConfig config;
+    private final ExecutorService workers;
+    private final Selector selector;
+    private final ConcurrentLinkedQueue<SocketChannel> pending;
+    private final ConcurrentLinkedQueue<Request> completed;
+    private final ArrayDeque<Runnable> stalled;
+    private final Consumer<SelectionKey> keyHandler;
+
+                                        //METODO COSTRUTTORE
+
+    //THROWS: IOException se non è possibile aprire il selettore
+    public Reactor(ServerWORTH server, ExecutorService workers, ServerConfig config) throws IOException {
+        if (server == null) throw new NullPointerException("Invalid server");
+        if (workers == null) throw new NullPointerException("Invalid executor");
+        if (config == null) throw new NullPointerException("Invalid configuration");
+        this.server = server;
+        this.workers = workers;
+        this.config = config;
+        this.selector = Selector.open();
+        this.pending = new ConcurrentLinkedQueue<>();
+        this.completed = new ConcurrentLinkedQueue<>();
+        this.stalled = new ArrayDeque<>();
+        this.keyHandler = this::handleKey;
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI D'ISTANZA
+
+    /* REQUIRES: socketChannel != null && socketChannel non bloccante
+     * EFFECTS: assegna al reactor una nuova connessione e risveglia il selettore
+     *          affinché la registri (invocato dal thread acceptor) */
+    public void assign(SocketChannel socketChannel) {
+        if (socketChannel == null) throw new NullPointerException("Invalid channel");
+        pending.add(socketChannel);
+        selector.wakeup();
+    }
+
+    @Override
+    //EFFECTS: gestisce le operazioni di I/O dei canali assegnati al reactor
+    public void run() {
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                //le chiavi pronte vengono passate direttamente al gestore, senza iterare l'insieme selectedKeys;
+                //se ci sono richieste in attesa il selettore si risveglia periodicamente per riprovare
+                if (stalled.isEmpty()) selector.select(keyHandler);
+                else selector.select(keyHandler, STALL_RETRY_MS);
+            } catch (IOException e) {
+                e.printStackTrace();
+                return;
+            }
+            registerPending();
+            registerCompleted();
+            submitStalled();
+        }
+    }
+
+    /* REQUIRES: request != null
+     * EFFECTS: esegue la richiesta (invocato da un worker) e la restituisce al reactor,
+     *          che accoda la risposta alla sessione e risveglia il selettore; non si blocca mai. La richiesta
+     *          viene restituita anche se il comando lancia un Error, che poi viene propagato al worker */
+    void execute(Request request) {
+        //esegue la richiesta del client per conto dell'utente associato alla sessione
+        String answer = null;
+        try {
+            answer = server.runCmd(request.getMessage(), request.getSession());
+        } catch (RuntimeException ignored) {
+        } finally {
+            request.setAnswer(answer != null ? answer : "Unable to execute the command");
+            completed.offer(request);
+            selector.wakeup();
+        }
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI AUSILIARI
+
+    /* EFFECTS: registra sul selettore, con l'operazione OP_READ, i canali assegnati dall'acceptor;
+     *          la sessione creata qui resta l'attachment della chiave finché il canale non viene chiuso */
+    private void registerPending() {
+        SocketChannel socketChannel;
+        while ((socketChannel = pending.poll()) != null) {
+            try {
+                SelectionKey key = socketChannel.register(selector, SelectionKey.OP_READ);
+                key.attach(new Session(this, key, config));
+            } catch (IOException e) {
+                System.out.println("Client is terminated");
+                try {
+                    socketChannel.close();
+                } catch (IOException ignored) {}
+            }
+        }
+    }
+
+    /* EFFECTS: accoda le risposte preparate dai worker alle rispettive sessioni
+     *          e avvia l'esecuzione delle richieste successive */
+    private void registerCompleted() {
+        Request request;
+        while ((request = completed.poll()) != null) {
+            Session session = request.getSession();
+            session.setRunning(false);
+            //il canale potrebbe essere stato chiuso mentre il comando era in esecuzione
+            if (!session.getKey().isValid()) {
+                disconnect(session);
+                continue;
+            }
+            session.addReply(request);
+            dispatch(session);
+            updateInterest(session.getKey(), session);
+            resumeReading(session.getKey());
+        }
+    }
+
+    //EFFECTS: sottomette di nuovo, in ordine di arrivo, le richieste rifiutate dal pool
+    private void submitStalled() {
+        while (!stalled.isEmpty()) {
+            try {
+                workers.execute(stalled.peekFirst());
+                stalled.pollFirst();
+            } catch (RejectedExecutionException e) {
+                return;
+            }
+        }
+    }
+
+    /* EFFECTS: affida a un worker la prossima richiesta della sessione; le richieste di una
+     *          stessa connessione vengono eseguite una alla volta, nell'ordine di arrivo */
+    private void dispatch(Session session) {
+        if (session.isRunning()) return;
+        Request request = session.nextRequest();
+        if (request == null) return;
+        session.setRunning(true);
+        submit(request);
+    }
+
+    /* EFFECTS: affida la richiesta a un worker; se la coda del pool è piena la richiesta
+     *          viene messa in attesa (e la sessione non accetta nuove richieste) */
+    private void submit(Runnable task) {
+        if (!stalled.isEmpty()) {
+            stalled.addLast(task);
+            return;
+        }
+        try {
+            workers.execute(task);
+        } catch (RejectedExecutionException e) {
+            stalled.addLast(task);
+        }
+    }
+
+    //EFFECTS: gestisce le operazioni pronte sul canale associato alla chiave
+    private void handleKey(SelectionKey key) {
+        try { //try usato per gestire la terminazione improvvisa del client
+            if (key.isReadable()) {                     //READABLE
+                this.readMessage(key);
+            }
+            if (key.isValid() && key.isWritable()) {    //WRITEABLE
+                this.writeMessage(key);
+            }
+
+        } catch (IOException e) {
+            //client terminato improvvisamente
+            System.out.println("Client is terminated");
+            closeChannel(key);
+        }
+    }
+
+    /* EFFECTS: aggiorna sul posto le operazioni di interesse del canale: OP_WRITE se ci sono
+     *          risposte da mandare, OP_READ se la sessione può accettare nuove richieste */
+    private static void updateInterest(SelectionKey key, Session session) {
+        int ops = 0;
+        if (session.hasReplies()) ops |= SelectionKey.OP_WRITE;
+        if (session.canRead()) ops |= SelectionKey.OP_READ;
+        if (key.interestOps() != ops) key.interestOps(ops);
+    }
+
+    /* EFFECTS: legge le richieste del client e le affida al pool di worker, che al termine
+     *          dell'esecuzione risveglia il selettore; in modalità pipelining legge tutti i frame
+     *          disponibili finché le richieste in sospeso non raggiungono il limite
+     * THROWS: IOException se si verifica un errore di I/O o se il frame non è valido */
+    private void readMessage(SelectionKey key) throws IOException {
+        SocketChannel socketChannel = (SocketChannel) key.channel();
+        //recupera la sessione della connessione
+        Session session = (Session) key.attachment();
+
+        Request request;
+        while (session.canRead() && (request = session.readFrame(socketChannel)) != null) {
+            if (!session.isPipelined() && request.getMessage().trim().equals("pipeline")) {
+                //il cambio di modalità deve valere già per il frame successivo
+                session.enablePipelining();
+                request.setAnswer("Pipelining enabled");
+                session.addReply(request);
+            } else session.enqueue(request);
+        }
+        dispatch(session);
+        updateInterest(key, session);
+    }
+
+    /* EFFECTS: scrive le risposte sul canale del client senza bloccare il reactor: se il client
+     *          non le legge abbastanza velocemente, l'interesse a OP_WRITE resta registrato
+     *          e la scrittura riprende alla select successiva
+     * THROWS:  IOException se si verifica un errore di I/O*/
+    private void writeMessage(SelectionKey key) throws IOException {
+        SocketChannel socketChannel = (SocketChannel) key.channel();
+        Session session = (Session) key.attachment();
+        session.flush(socketChannel);
+        //la sessione potrebbe essere di nuovo in grado di accettare le richieste già ricevute
+        if (session.canRead() && session.hasPendingInput()) readMessage(key);
+        else updateInterest(key, session);
+    }
+
+    /* EFFECTS: se la sessione può accettare nuove richieste, estrae quelle già ricevute nel suo buffer,
+     *          che non farebbero scattare la select perché il canale non ha altri byte da leggere */
+    private void resumeReading(SelectionKey key) {
+        Session session = (Session) key.attachment();
+        if (!key.isValid() || !session.canRead() || !session.hasPendingInput()) return;
+        try {
+            readMessage(key);
+        } catch (IOException e) {
+            System.out.println("Client is terminated");
+            closeChannel(key);
+        }
+    }
+
+    /* EFFECTS: chiude il canale associato alla chiave, la cancella dal selettore e rilascia la sessione;
+     *          se una richiesta è in esecuzione, la sessione viene rilasciata quando il worker la restituisce */
+    private void closeChannel(SelectionKey key) {
+        key.cancel();
+        try {
+            key.channel().close();
+        } catch (IOException ignored) {}
+        Session session = (Session) key.attachment();
+        if (!session.isRunning()) disconnect(session);
+    }
+
+    /* EFFECTS: se sulla connessione chiusa era stato eseguito il login, affida a un worker
+     *          il logout dell'utente, così che risulti offline anche se il client è terminato improvvisamente */
+    private void disconnect(Session session) {
+        if (session.getUser() != null) submit(() -> server.disconnect(session));
+    }
+
+}
@@ -0,0 +1,17 @@
+import java.util.ArrayList;
+
+public interface RecoveryHandler {
+
+    /* OVERVIEW: riceve gli elementi dello stato salvato durante il recovery (vedi Storage.recover);
+     *           i membri di un progetto possono essere passati prima o dopo le sue card */
+
+    //EFFECTS: ripristina un utente registrato
+    void user(User user);
+
+    //EFFECTS: ripristina la lista dei membri del progetto <projectName>
+    void members(String projectName, ArrayList<String> members);
+
+    //EFFECTS: ripristina una card del progetto <projectName>
+    void card(String projectName, Card card);
+
+}
@@ -0,0 +1,70 @@
+public class Request implements Runnable {
+
+    /* OVERVIEW: modella una richiesta ricevuta da un client e la relativa risposta; ogni sessione
+     *           riutilizza i propri oggetti Request, così da non allocarne uno per ogni richiesta
+     *              - reactor: reactor che gestisce la connessione dalla quale arriva la richiesta
+     *              - session: sessione della connessione dalla quale arriva la richiesta
+     *              - id: identificativo della richiesta (significativo solo in modalità pipelining)
+     *              - tagged: true se la risposta deve riportare l'identificativo della richiesta
+     *              - message: comando inviato dal client
+     *              - answer: risposta al comando */
+
+    private final Reactor reactor;
+    private final Session session;
+    private int id;
+    private boolean tagged;
+    private String message;
+    private String answer;
+
+                                        //METODO COSTRUTTORE
+
+    public Request(Reactor reactor, Session session) {
+        if (reactor == null) throw new NullPointerException("Invalid reactor");
+        if (session == null) throw new NullPointerException("Invalid session");
+        this.reactor = reactor;
+        this.session = session;
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI GETTER/SETTER
+
+    public Session getSession() { return session; }
+
+    public int getId() { return id; }
+
+    public boolean isTagged() { return tagged; }
+
+    public String getMessage() { return message; }
+
+    public String getAnswer() { return answer; }
+
+    public void setAnswer(String answer) { this.answer = answer; }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI D'ISTANZA
+
+    /* REQUIRES: message != null
+     * EFFECTS: prepara l'oggetto per una nuova richiesta */
+    public void prepare(int id, boolean tagged, String message) {
+        if (message == null) throw new NullPointerException("Invalid message");
+        this.id = id;
+        this.tagged = tagged;
+        this.message = message;
+        this.answer = null;
+    }
+
+    //EFFECTS: rilascia il comando e la risposta, così che l'oggetto possa essere riutilizzato
+    public void clear() {
+        this.message = null;
+        this.answer = null;
+    }
+
+    @Override
+    //EFFECTS: esegue la richiesta su un worker e la restituisce al reactor
+    public void run() {
+        reactor.execute(this);
+    }
+
+}
@@ -0,0 +1,153 @@
+public class ServerConfig {
+
+    /* OVERVIEW: raccoglie i parametri di configurazione del server WORTH; ogni parametro
+     *           può essere impostato all'avvio con -Dworth.<parametro>=<valore>
+     *              - reactors: numero di thread selettori che gestiscono le connessioni TCP
+     *                  (di default uno per ogni core disponibile)
+     *              - workers: numero di thread che eseguono i comandi ricevuti dai client
+     *              - workQueue: numero massimo di comandi in attesa di essere eseguiti; quando la coda
+     *                  è piena i reactor smettono di leggere dai client finché non si libera un posto
+     *              - maxFrame: dimensione massima (in byte) di una richiesta; una richiesta più grande
+     *                  provoca la chiusura della connessione
+     *              - maxInFlight: numero massimo di richieste in sospeso su una connessione in modalità
+     *                  pipelining; raggiunto il limite il reactor smette di leggere da quel client
+     *              - writeHighWater: numero di byte di risposte non ancora scritte oltre il quale il reactor
+     *                  smette di leggere da un client che non consuma le risposte
+     *              - storage: meccanismo di persistenza -> {json, wal}; json (default) salva un file per ogni
+     *                  card nella directory "Recovery", wal usa un write-ahead log (vedi WalStorage)
+     *              - walDir: directory del write-ahead log
+     *              - walFsync: politica di sincronizzazione del log con il disco -> {always, interval, never}
+     *              - walFsyncInterval: con la politica interval, intervallo massimo (in ms) tra due sincronizzazioni
+     *              - walSnapshotEvery: numero di record del log dopo i quali viene scritto uno snapshot
+     *              - flushWindow: finestra di durabilità (in ms); se maggiore di 0 le modifiche vengono salvate
+     *                  da un thread dedicato entro tale intervallo, accorpando quelle sullo stesso elemento
+     *                  (vedi AsyncStorage), altrimenti vengono salvate durante l'esecuzione del comando
+     *              - recoveryThreads: numero di thread che leggono in parallelo i progetti salvati all'avvio
+     *                  (di default uno per ogni core disponibile)
+     *              - callbackThreads: numero di thread che eseguono le callback RMI verso i client; il pool
+     *                  aggiunge un thread per ogni callback bloccata, finché non ritorna (vedi CallbackDispatcher)
+     *              - callbackQueue: numero massimo di notifiche che un client può avere in sospeso; il client
+     *                  che resta più indietro riceve l'intera lista degli utenti
+     *              - callbackTimeout: tempo massimo (in ms) di attesa di una callback, oltre il quale il client
+     *                  viene rimosso
+     *              - multicastQueue: numero massimo di notifiche multicast in attesa di essere inviate; le
+     *                  notifiche successive vengono scartate (vedi MulticastSender)
+     *              - chatHistory: numero di messaggi della chat conservati per ogni progetto, che i client
+     *                  possono recuperare se li hanno persi (vedi ChatHistory)
+     *              - notifyWindow: intervallo (in ms) in cui vengono raccolte le notifiche di sistema di un
+     *                  progetto prima di inviarle insieme; 0 per inviarle una alla volta (vedi NotificationAggregator)
+     *              - multicastMtu: dimensione massima (in byte) dei datagrammi che raccolgono più notifiche */
+
+    private final int reactors;
+    private final int workers;
+    private final int workQueue;
+    private final int maxFrame;
+    private final int maxInFlight;
+    private final int writeHighWater;
+    private final String storage;
+    private final String walDir;
+    private final String walFsync;
+    private final int walFsyncInterval;
+    private final int walSnapshotEvery;
+    private final int flushWindow;
+    private final int recoveryThreads;
+    private final int callbackThreads;
+    private final int callbackQueue;
+    private final int callbackTimeout;
+    private final int multicastQueue;
+    private final int chatHistory;
+    private final int notifyWindow;
+    private final int multicastMtu;
+
+                                        //METODO COSTRUTTORE
+
+    /* EFFECTS: legge la configurazione dalle proprietà di sistema
+     * THROWS: IllegalArgumentException se uno dei parametri non è valido */
+    public ServerConfig() {
+        this.reactors = Integer.getInteger("worth.reactors", Runtime.getRuntime().availableProcessors());
+        this.workers = Integer.getInteger("worth.workers", 2 * Runtime.getRuntime().availableProcessors());
+        this.workQueue = Integer.getInteger("worth.workQueue", 1024);
+        this.maxFrame = Integer.getInteger("worth.maxFrame", 1024 * 1024);
+        this.maxInFlight = Integer.getInteger("worth.maxInFlight", 64);
+        this.writeHighWater = Integer.getInteger("worth.writeHighWater", 256 * 1024);
+        if (reactors <= 0) throw new IllegalArgumentException("Invalid number of reactors");
+        if (workers <= 0) throw new IllegalArgumentException("Invalid number of workers");
+        if (workQueue <= 0) throw new IllegalArgumentException("Invalid work queue size");
+        if (maxFrame <= 0) throw new IllegalArgumentException("Invalid frame size");
+        if (maxInFlight <= 0) throw new IllegalArgumentException("Invalid number of requests in flight");
+        if (writeHighWater <= 0) throw new IllegalArgumentException("Invalid high-water mark");
+        this.storage = System.getProperty("worth.storage", "json");
+        this.walDir = System.getProperty("worth.walDir", "./Wal");
+        this.walFsync = System.getProperty("worth.walFsync", "always");
+        this.walFsyncInterval = Integer.getInteger("worth.walFsyncInterval", 100);
+        this.walSnapshotEvery = Integer.getInteger("worth.walSnapshotEvery", 10000);
+        if (!storage.equals("json") && !storage.equals("wal")) throw new IllegalArgumentException("Invalid storage: " + storage);
+        if (!walFsync.equals("always") && !walFsync.equals("interval") && !walFsync.equals("never"))
+            throw new IllegalArgumentException("Invalid fsync policy: " + walFsync);
+        if (walFsyncInterval <= 0) throw new IllegalArgumentException("Invalid fsync interval");
+        if (walSnapshotEvery <= 0) throw new IllegalArgumentException("Invalid snapshot interval");
+        this.flushWindow = Integer.getInteger("worth.flushWindow", 0);
+        if (flushWindow < 0) throw new IllegalArgumentException("Invalid flush window");
+        this.recoveryThreads = Integer.getInteger("worth.recoveryThreads", Runtime.getRuntime().availableProcessors());
+        if (recoveryThreads <= 0) throw new IllegalArgumentException("Invalid number of recovery threads");
+        this.callbackThreads = Integer.getInteger("worth.callbackThreads", 4);
+        this.callbackQueue = Integer.getInteger("worth.callbackQueue", 1024);
+        this.callbackTimeout = Integer.getInteger("worth.callbackTimeout", 5000);
+        if (callbackThreads <= 0) throw new IllegalArgumentException("Invalid number of callback threads");
+        if (callbackQueue <= 0) throw new IllegalArgumentException("Invalid callback queue size");
+        if (callbackTimeout <= 0) throw new IllegalArgumentException("Invalid callback timeout");
+        this.multicastQueue = Integer.getInteger("worth.multicastQueue", 4096);
+        if (multicastQueue <= 0) throw new IllegalArgumentException("Invalid multicast queue size");
+        this.chatHistory = Integer.getInteger("worth.chatHistory", 1024);
+        if (chatHistory <= 0) throw new IllegalArgumentException("Invalid chat history size");
+        this.notifyWindow = Integer.getInteger("worth.notifyWindow", 10);
+        if (notifyWindow < 0) throw new IllegalArgumentException("Invalid notification window");
+        this.multicastMtu = Integer.getInteger("worth.multicastMtu", 1400);
+        if (multicastMtu < 64 || multicastMtu > 8192) throw new IllegalArgumentException("Invalid multicast MTU");
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI GETTER
+
+    public int getReactors() { return reactors; }
+
+    public int getWorkers() { return workers; }
+
+    public int getWorkQueue() { return workQueue; }
+
+    public int getMaxFrame() { return maxFrame; }
+
+    public int getMaxInFlight() { return maxInFlight; }
+
+    public int getWriteHighWater() { return writeHighWater; }
+
+    public String getStorage() { return storage; }
+
+    public String getWalDir() { return walDir; }
+
+    public String getWalFsync() { return walFsync; }
+
+    public int getWalFsyncInterval() { return walFsyncInterval; }
+
+    public int getWalSnapshotEvery() { return walSnapshotEvery; }
+
+    public int getFlushWindow() { return flushWindow; }
+
+    public int getRecoveryThreads() { return recoveryThreads; }
+
+    public int getCallbackThreads() { return callbackThreads; }
+
+    public int getCallbackQueue() { return callbackQueue; }
+
+    public int getCallbackTimeout() { return callbackTimeout; }
+
+    public int getMulticastQueue() { return multicastQueue; }
+
+    public int getChatHistory() { return chatHistory; }
+
+    public int getNotifyWindow() { return notifyWindow; }
+
+    public int getMulticastMtu() { return multicastMtu; }
+
+}
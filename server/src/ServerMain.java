@@ -2,7 +2,7 @@ public class ServerMain {
 
     public static void main (String[] args){
 
-        ServerWORTH server = new ServerWORTH();
+        ServerWORTH server = new ServerWORTH(new ServerConfig());
         server.registerService();
         server.start();
     }
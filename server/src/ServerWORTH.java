@@ -1,54 +1,64 @@
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
 import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.Socket;
-import java.nio.ByteBuffer;
 import java.nio.channels.*;
-import java.nio.charset.StandardCharsets;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
+import java.rmi.server.RMISocketFactory;
 import java.rmi.server.UnicastRemoteObject;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class ServerWORTH {
 
     /* OVERVIEW: modella il server del servizio WORTH
-     *              - users: insieme degli utenti (con le relative informazioni) registrati al servizio
-     *              - projects: insieme dei progetti presenti nel server
-     *              - registerManager: oggetto che fornisce metodi remoti al client  */
-
-    private final List<User> users;
-    private final LinkedList<Project> projects;
+     *              - users: registro degli utenti (con le relative informazioni) iscritti al servizio,
+     *                  indicizzato per username e condiviso con registerManager
+     *              - projects: registro dei progetti presenti nel server, indicizzati per nome
+     *                  e per membro
+     *              - registerManager: oggetto che fornisce metodi remoti al client
+     *              - storage: meccanismo di persistenza dello stato (vedi ServerConfig.getStorage)
+     *              - sender: mittente condiviso da tutti i progetti per le notifiche sulle chat
+     *           I comandi vengono eseguiti in parallelo dai worker: ogni progetto ha un proprio lock
+     *           (vedi Project), mentre la creazione e la cancellazione dei progetti, che modificano
+     *           lo stato salvato e gli indirizzi di multicast, sono serializzate sul monitor di projects */
+
+    private final ServerConfig config;
+    private final UserRegistry users;
+    private final ProjectRegistry projects;
     private RegisterManager registerManager;
+    private final Storage storage;
+    private final MulticastSender sender;
 
     private String multicastIP = "239.0.0.0";
     private final LinkedList<String> oldAddress;
 
 
-    private final static int BUFFER_DIMENSION = 1024;
     private final static int REGISTER_PORT = 4567;
     private final static int TCP_PORT = 5678;
 
 
                                         //METODO COSTRUTTORE
 
-    public ServerWORTH() {
+    public ServerWORTH(ServerConfig config) {
+        if (config == null) throw new NullPointerException("Invalid configuration");
+        this.config = config;
         this.oldAddress = new LinkedList<>();
-        this.users = Collections.synchronizedList(new ArrayList<>());
-        this.projects = new LinkedList<>();
+        this.storage = openStorage(config);
+        this.sender = openSender(config);
+        this.users = new UserRegistry(storage);
+        this.projects = new ProjectRegistry();
         try {
-            readJSon();
+            recover();
         } catch (IOException e) {
             System.out.println("Impossibile leggere i file di recovery");
         }
-
+        //le modifiche non ancora salvate vengono rese persistenti alla chiusura del server
+        Runtime.getRuntime().addShutdownHook(new Thread(storage::close, "storage-shutdown"));
     }
 
     //-------------------------------------------------------------------------------------//
@@ -57,8 +67,17 @@ public class ServerWORTH {
 
     // EFFECTS: esporta l'oggetto "registerManager"
     public void registerService() {
+        //timeout delle callback verso i client: la risposta è limitata dal runtime RMI (letto alla prima
+        //connessione), l'apertura della connessione dalla fabbrica dei socket
+        if (System.getProperty("sun.rmi.transport.tcp.responseTimeout") == null)
+            System.setProperty("sun.rmi.transport.tcp.responseTimeout", Integer.toString(config.getCallbackTimeout()));
         try {
-            registerManager = new RegisterManager(users);
+            RMISocketFactory.setSocketFactory(new TimeoutSocketFactory(config.getCallbackTimeout()));
+        } catch (IOException e) {
+            System.out.println("Fabbrica dei socket RMI già impostata: le connessioni verso i client non hanno timeout");
+        }
+        try {
+            registerManager = new RegisterManager(users, config);
             RegisterManagerInterface stub = (RegisterManagerInterface) UnicastRemoteObject.exportObject(registerManager, 0);
             LocateRegistry.createRegistry(REGISTER_PORT);
             Registry r = LocateRegistry.getRegistry(REGISTER_PORT);
@@ -68,54 +87,36 @@ public class ServerWORTH {
         }
     }
 
-    //EFFECTS: avvia il server WORTH
+    /* EFFECTS: avvia il server WORTH: il thread chiamante fa da acceptor e assegna
+     *          le nuove connessioni ai reactor secondo una politica round-robin */
     public void start() {
 
         try (ServerSocketChannel serverChannel = ServerSocketChannel.open()) {
             ServerSocket serverSocket = serverChannel.socket();
             serverSocket.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), TCP_PORT));
-            serverChannel.configureBlocking(false);
 
-            Selector selector = Selector.open();
-            serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            //i comandi vengono eseguiti da un pool limitato, così i reactor si occupano solo dell'I/O
+            ExecutorService workers = newWorkerPool();
+
+            //ogni reactor gestisce le connessioni assegnate con un proprio selettore
+            Reactor[] reactors = new Reactor[config.getReactors()];
+            for (int i = 0; i < reactors.length; i++) {
+                reactors[i] = new Reactor(this, workers, config);
+                Thread thread = new Thread(reactors[i], "reactor-" + i);
+                thread.start();
+            }
 
             System.out.println("Listening for connections");
 
+            int next = 0;
             while (true) {
-                if (selector.select() == 0) continue;
-
-                //insieme delle chiavi
-                Set<SelectionKey> selectionKeys = selector.selectedKeys();
-                Iterator<SelectionKey> keyIterator = selectionKeys.iterator();
-
-                while (keyIterator.hasNext()) {
-                    SelectionKey key = keyIterator.next();
-                    keyIterator.remove();
-
-                    try { //try usato per gestire la terminazione improvvisa del client
-                        if (key.isAcceptable()) {       //ACCETTABLE
-
-                            ServerSocketChannel server = (ServerSocketChannel) key.channel();
-                            SocketChannel socketChannel = server.accept();
-                            System.out.println("New connection from: " + socketChannel.getRemoteAddress());
-
-                            socketChannel.configureBlocking(false);
-                            this.registerRead(selector, socketChannel);
-
-                        } else if (key.isReadable()) {  //READABLE
-                            this.readMessage(selector, key);
-
-                        } else if (key.isWritable()) {  //WRITEABLE
-                            this.writeMessage(selector, key);
-                        }
-                        
-                    }catch (IOException e){
-                        //client terminato improvvisamente
-                        System.out.println("Client is terminated");
-                        key.channel().close();
-                        key.cancel();
-                    }
-                }
+                //accept bloccante: il canale viene poi gestito in modo non bloccante dal reactor
+                SocketChannel socketChannel = serverChannel.accept();
+                System.out.println("New connection from: " + socketChannel.getRemoteAddress());
+
+                socketChannel.configureBlocking(false);
+                reactors[next].assign(socketChannel);
+                next = (next + 1) % reactors.length;
             }
         } catch (IOException e) {
             e.printStackTrace();
@@ -124,73 +125,17 @@ public class ServerWORTH {
 
     //-------------------------------------------------------------------------------------//
 
-    /* EFFECTS: registra l'interesse all'operazione di read sul selettore
-     * THROWS: IOException se si verifica un errore di I/O */
-    private void registerRead(Selector selector, SocketChannel socketChannel) throws IOException {
-        //creazione del buffer
-        ByteBuffer length = ByteBuffer.allocate(Integer.BYTES);
-        ByteBuffer message = ByteBuffer.allocate(BUFFER_DIMENSION);
-        ByteBuffer[] buffers = {length, message};
-
-        /* aggiunge il canale del client al selector con l'operazione OP_READ
-         * e aggiunge l'array ByteBuffer [length, message] come attachment  */
-        socketChannel.register(selector, SelectionKey.OP_READ, buffers);
-    }
-
-    /* EFFECTS: legge ed esegue la richiesta del client e registra l'interesse
-     *           all'operazione di write sul selettore
-     * THROWS: IOException se si verifica un errore di I/O */
-    private void readMessage(Selector selector, SelectionKey key) throws IOException {
-        SocketChannel socketChannel = (SocketChannel) key.channel();
-        //recupera l'array di ByteBuffer
-        ByteBuffer[] buffers = (ByteBuffer[]) key.attachment();
-        socketChannel.read(buffers);
-
-        if (!buffers[0].hasRemaining()) {
-            buffers[0].flip();
-            int length = buffers[0].getInt();
-
-            if (buffers[1].position() == length) {
-                buffers[1].flip();
-
-                String message = new String(buffers[1].array(), StandardCharsets.UTF_8);
-
-                //ottengo l'indirizzo IP e la porta del client
-                Socket socket = socketChannel.socket();
-                InetAddress address = socket.getInetAddress();
-                int port = socket.getPort();
-
-                //esegue la richiesta del client
-                String answer = runCmd(message, address, port);
-                ByteBuffer buffer = ByteBuffer.wrap(answer.getBytes(StandardCharsets.UTF_8));
-
-                //aggiunge il canale del lient al selector con l'operazione OP_WRITE
-                socketChannel.register(selector, SelectionKey.OP_WRITE, buffer);
-            }
-        }
-    }
-
-    /* EFFECTS: scrive la risposta sul canale del client
-     * THROWS:  IOException se si verifica un errore di I/O*/
-    private void writeMessage(Selector selector, SelectionKey key) throws IOException {
-        SocketChannel socketChannel = (SocketChannel) key.channel();
-        ByteBuffer buffer = (ByteBuffer) key.attachment();
-        while (buffer.hasRemaining()) socketChannel.write(buffer);
-        buffer.clear();
-        this.registerRead(selector, socketChannel);
-    }
-
-    /* EFFECTS: esegue il comando ricevuto dal client
-                e restituisce il messaggio di risposta */
-    private String runCmd(String message, InetAddress address, int port) {
+    /* EFFECTS: esegue il comando ricevuto dal client per conto dell'utente associato alla sessione
+                e restituisce il messaggio di risposta (invocato in parallelo dai worker) */
+    String runCmd(String message, Session session) {
         String[] strings = message.split(" ");
         String cmd = strings[0].trim();
         switch (cmd) {
             case "login": {
                 try {
-                    this.login(strings[1], strings[2].trim(), address, port);
+                    this.login(strings[1], strings[2].trim(), session);
                     //esegue una callback per informare gli altri utenti del login
-                    registerManager.update(listToMap(users));
+                    registerManager.userChanged(session.getUser());
                     return strings[1] + " logged in";
                 } catch (Exception e) {
                     return e.getMessage();
@@ -198,11 +143,11 @@ public class ServerWORTH {
             }
             case "logout": {
                 try {
-                    User user = getUser(address, port);
-                    if (user == null) throw new NoSuchElementException("Username not found");
+                    User user = getUser(session);
                     this.logout(user);
+                    session.setUser(null);
                     //esegue una callback per informare gli altri utenti del logout
-                    registerManager.update(listToMap(users));
+                    registerManager.userChanged(user);
                     return user.getName() + " logged out";
                 } catch (Exception e) {
                     return e.getMessage();
@@ -210,7 +155,7 @@ public class ServerWORTH {
             }
             case "list_projects": {
                 try {
-                    String nickUtente = getUser(address, port).getName();
+                    String nickUtente = getUser(session).getName();
                     return this.listProjects(nickUtente);
                 } catch (Exception e) {
                     return e.getMessage();
@@ -218,7 +163,7 @@ public class ServerWORTH {
             }
             case "create_project": {
                 try {
-                    String creator = getUser(address, port).getName();
+                    String creator = getUser(session).getName();
                     this.createProject(strings[1].trim(), creator);
                     return "Project " + strings[1].trim() + " created";
                 } catch (Exception e) {
@@ -227,7 +172,7 @@ public class ServerWORTH {
             }
             case "add_member": {
                 try {
-                    if (hasRights(strings[1], address, port)) {
+                    if (hasRights(strings[1], session)) {
                         this.addMember(strings[1], strings[2].trim());
                         return strings[2].trim() + " added to " + strings[1];
                     } else return "Access denied";
@@ -238,7 +183,7 @@ public class ServerWORTH {
             case "show_members": {
                 try {
                     //controllo sui diritti di accesso al progetto
-                    if (hasRights(strings[1].trim(), address, port)) return this.showMembers(strings[1].trim());
+                    if (hasRights(strings[1].trim(), session)) return this.showMembers(strings[1].trim());
                     else return "Access denied";
                 } catch (Exception e) {
                     return e.getMessage();
@@ -246,7 +191,7 @@ public class ServerWORTH {
             }
             case "show_cards": {
                 try {
-                    if (hasRights(strings[1].trim(), address, port)) return this.showCards(strings[1].trim());
+                    if (hasRights(strings[1].trim(), session)) return this.showCards(strings[1].trim());
                     else return "Access denied";
                 } catch (Exception e) {
                     return e.getMessage();
@@ -254,7 +199,7 @@ public class ServerWORTH {
             }
             case "show_card": {
                 try {
-                    if (hasRights(strings[1], address, port)) return this.showCard(strings[1], strings[2].trim());
+                    if (hasRights(strings[1], session)) return this.showCard(strings[1], strings[2].trim());
                     else return "Access denied";
                 } catch (Exception e) {
                     return e.getMessage();
@@ -262,7 +207,7 @@ public class ServerWORTH {
             }
             case "add_card": {
                 try {
-                    if (hasRights(strings[1], address, port)) {
+                    if (hasRights(strings[1], session)) {
                         this.addCard(strings[1], strings[2], createDescription(strings));
                         return "Card " + strings[2] + " added to " + strings[1];
                     } else return "Access denied";
@@ -272,7 +217,7 @@ public class ServerWORTH {
             }
             case "move_card": {
                 try {
-                    if (hasRights(strings[1], address, port)) {
+                    if (hasRights(strings[1], session)) {
                         this.moveCard(strings[1], strings[2], strings[3], strings[4].trim());
                         return "Card " + strings[2] + " of project " + strings[1] + " moved from " + "\"" + strings[3] + "\"" + " to " + "\"" + strings[4].trim() + "\"";
                     } else return "Access denied";
@@ -280,9 +225,20 @@ public class ServerWORTH {
                     return e.getMessage();
                 }
             }
+            case "batch": {
+                try {
+                    //la prima riga contiene il nome del progetto, le successive le operazioni
+                    String[] lines = message.split("\\R");
+                    String projectName = lines[0].split(" ")[1].trim();
+                    if (hasRights(projectName, session)) return this.batch(projectName, lines);
+                    else return "Access denied";
+                } catch (Exception e) {
+                    return e.getMessage();
+                }
+            }
             case "get_card_history": {
                 try {
-                    if (hasRights(strings[1], address, port)) return this.getCardHistory(strings[1], strings[2].trim());
+                    if (hasRights(strings[1], session)) return this.getCardHistory(strings[1], strings[2].trim());
                     else return "Access denied";
                 } catch (Exception e) {
                     return e.getMessage();
@@ -290,7 +246,7 @@ public class ServerWORTH {
             }
             case "cancel_project": {
                 try {
-                    if (hasRights(strings[1].trim(), address, port)) {
+                    if (hasRights(strings[1].trim(), session)) {
                         this.cancelProject(strings[1].trim());
                         return "Project " + strings[1].trim() + " cancelled";
                     } else return "Access denied";
@@ -300,39 +256,60 @@ public class ServerWORTH {
             }
             case "join_chat":{
                 try {
-                    if (hasRights(strings[1].trim(), address, port)) {
+                    if (hasRights(strings[1].trim(), session)) {
                         return this.joinChat(strings[1].trim());
                     } else return "Access denied";
                 }catch (Exception e ){
                     return e.getMessage();
                 }
             }
+            case "send_msg": {
+                try {
+                    if (hasRights(strings[1], session)) {
+                        //il messaggio è tutto ciò che segue il nome del progetto
+                        this.sendChatMessage(strings[1], getUser(session).getName(), message.split(" ", 3)[2].trim());
+                        return "Message sent";
+                    } else return "Access denied";
+                } catch (Exception e) {
+                    return e.getMessage();
+                }
+            }
+            case "chat_history": {
+                try {
+                    if (hasRights(strings[1], session)) return this.chatHistory(strings[1], Long.parseLong(strings[2].trim()));
+                    else return "Access denied";
+                } catch (Exception e) {
+                    return e.getMessage();
+                }
+            }
             default : {
                 return "Command not found";
             }
         }
     }
 
-    /* REQUIRES: nickUtente != null && password != null && address != null && port >= 0
-     * EFFECTS: esegue il login dell'utente
-     * THROWS: - NullPointerException se nickUtente == null || password == null || address == null
-     *         - IllegalArgumentException se port < 0
+    /* REQUIRES: nickUtente != null && password != null && session != null
+     * EFFECTS: esegue il login dell'utente e lo associa alla sessione della connessione
+     * THROWS: - NullPointerException se nickUtente == null || password == null || session == null
+     *         - IllegalStateException se sulla connessione è già stato eseguito il login
      *         - NoSuchElementException se lo username non risulta registrato
      *         - ExistingNameException se lo username risulta già online
      *         - WrongPswException se la password non è corretta */
-    private void login(String nickUtente, String password, InetAddress address, int port) throws Exception {
+    private void login(String nickUtente, String password, Session session) throws Exception {
         if (nickUtente == null) throw new NullPointerException("Invalid username");
         if (password == null) throw new NullPointerException("Invalid password");
-        if (address == null) throw new NullPointerException("Invalid address");
-        if (port < 0) throw new IllegalArgumentException("Invalid port number");
+        if (session == null) throw new NullPointerException("Invalid session");
+        if (session.getUser() != null) throw new IllegalStateException(session.getUser().getName() + " already logged in");
 
         User user = getUser(nickUtente);
         if (user == null) throw new NoSuchElementException("Username not found");
         if (user.getPassword().equals(password)) {
-            if (user.getState().equals(UserState.ONLINE)) throw new ExistingNameException("User already logged");
-            user.setState(UserState.ONLINE);
-            user.setAddress(address);
-            user.setPort(port);
+            //due connessioni potrebbero eseguire il login dello stesso utente contemporaneamente
+            synchronized (user) {
+                if (user.getState().equals(UserState.ONLINE)) throw new ExistingNameException("User already logged");
+                user.setState(UserState.ONLINE);
+            }
+            session.setUser(user);
 
         } else throw new WrongPswException("Wrong Password");
 
@@ -340,9 +317,23 @@ public class ServerWORTH {
 
     //EFFECTS: esegue il logout dell'utente
     private void logout(User nickUtente) {
-        nickUtente.setState(UserState.OFFLINE);
-        nickUtente.setAddress(null);
-        nickUtente.setPort(-1);
+        synchronized (nickUtente) {
+            nickUtente.setState(UserState.OFFLINE);
+        }
+    }
+
+    /* REQUIRES: session != null
+     * EFFECTS: esegue il logout dell'utente associato a una connessione chiusa dal client,
+     *          anche se il client è terminato senza inviare il comando logout */
+    void disconnect(Session session) {
+        if (session == null) throw new NullPointerException("Invalid session");
+        User user = session.getUser();
+        if (user == null) return;
+        this.logout(user);
+        session.setUser(null);
+        System.out.println(user.getName() + " disconnected");
+        //esegue una callback per informare gli altri utenti del logout
+        registerManager.userChanged(user);
     }
 
     /* REQUIRES: nickUtente != null
@@ -351,9 +342,8 @@ public class ServerWORTH {
     private String listProjects(String nickUtente) {
         if (nickUtente == null) throw new NullPointerException("Invalid username");
         StringBuilder list = new StringBuilder();
-        for (Project project : projects) {
-            if (project.isMember(nickUtente))
-                list.append(project.getName()).append(System.lineSeparator());
+        for (String projectName : projects.projectsOf(nickUtente)) {
+            list.append(projectName).append(System.lineSeparator());
         }
         if  (list.toString().length()==0) throw new NullPointerException("At the moment there is no project"+System.lineSeparator());
         return list.toString();
@@ -365,9 +355,11 @@ public class ServerWORTH {
      *         - ExistingNameException se esiste già un progetto con quel nome */
     private void createProject(String projectName, String creator) throws ExistingNameException {
         if (projectName == null) throw new NullPointerException("Invalid project name");
-        if (getProject(projectName) != null) throw new ExistingNameException("Project already exists");
-        Project project = new Project(projectName, creator, newMulticastIP());
-        projects.add(project);
+        synchronized (projects) {
+            if (getProject(projectName) != null) throw new ExistingNameException("Project already exists");
+            Project project = new Project(projectName, creator, newMulticastIP(), storage, sender, config.getChatHistory());
+            projects.add(project);
+        }
     }
 
     /* REQUIRES: projectName != null && nickUtente != null
@@ -381,9 +373,9 @@ public class ServerWORTH {
 
         Project project = getProject(projectName);
         if (project == null) throw new NoSuchElementException("Project not found");
-        String user = getUser(nickUtente).getName();
+        User user = getUser(nickUtente);
         if (user == null) throw new NoSuchElementException("Username not found");
-        project.addMember(user);
+        projects.addMember(project, user.getName());
     }
 
     /* REQUIRES: projectName != null
@@ -442,6 +434,24 @@ public class ServerWORTH {
         project.moveCard(cardName, listaPartenza.toLowerCase(), listaDestinazione.toLowerCase());
     }
 
+    /* REQUIRES: projectName != null && lines != null
+     * EFFECTS: applica al progetto <projectName> le operazioni add_card e move_card contenute
+     *          in <lines> (una per riga, a partire dalla seconda) con un'unica richiesta
+     * THROWS: - NullPointerException se projectName == null || lines == null
+     *         - NoSuchElementException se il progetto indicato da <projectName> non esiste */
+    private String batch(String projectName, String[] lines) {
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        if (lines == null) throw new NullPointerException("Invalid operations");
+        Project project = getProject(projectName);
+        if (project == null) throw new NoSuchElementException("Project not found");
+        ArrayList<String[]> operations = new ArrayList<>(lines.length);
+        for (int i = 1; i < lines.length; i++) {
+            String line = lines[i].trim();
+            if (!line.isEmpty()) operations.add(line.split(" "));
+        }
+        return project.applyBatch(operations);
+    }
+
     /* REQUIRES: projectName != null
      * EFFECTS: ottine la "storia" della card <cardName> del progetto <projectName>
      * THROWS: - NullPointerException se projectName == null
@@ -463,13 +473,14 @@ public class ServerWORTH {
         if (projectName == null) throw new NullPointerException("Invalid project name");
         Project project = getProject(projectName);
         if (project == null) throw new NoSuchElementException("Project not found");
-        if (project.isDone()) {
-            project.sendMessage("close");
+        synchronized (projects) {
+            //da qui in poi ogni modifica del progetto viene rifiutata
+            project.cancel();
+            project.closeChat();
             oldAddress.add(project.getGroup().getHostAddress());
             projects.remove(project);
-            deleteProjectCopy(project);
+            storage.deleteProject(project.getName());
         }
-        else throw new IllegalArgumentException("The project can be cancel if all the cards have been done");
     }
 
     /* REQUIRES: projectName != null
@@ -483,6 +494,28 @@ public class ServerWORTH {
         else return project.getGroup().getHostAddress() + " " + project.getPort();
     }
 
+    /* REQUIRES: projectName != null && nickUtente != null && message != null
+     * EFFECTS: manda il messaggio <message> di <nickUtente> sulla chat del progetto <projectName>
+     * THROWS: - NullPointerException se projectName == null || nickUtente == null || message == null
+     *         - NoSuchElementException se il progetto indicato da <projectName> non esiste */
+    private void sendChatMessage (String projectName, String nickUtente, String message) {
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        Project project = getProject(projectName);
+        if (project == null) throw new NoSuchElementException("Project not found");
+        project.sendChatMessage(nickUtente, message);
+    }
+
+    /* REQUIRES: projectName != null
+     * EFFECTS: restituisce i messaggi della chat del progetto <projectName> con numero di sequenza maggiore di <after>
+     * THROWS: - NullPointerException se projectName == null
+     *         - NoSuchElementException se il progetto indicato da <projectName> non esiste */
+    private String chatHistory (String projectName, long after) {
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        Project project = getProject(projectName);
+        if (project == null) throw new NoSuchElementException("Project not found");
+        return project.readChat(after);
+    }
+
     //-------------------------------------------------------------------------------------//
 
                                         //METODI AUSILIARI
@@ -490,45 +523,49 @@ public class ServerWORTH {
     /* EFFECTS: cerca e restituisce il progetto indicato da <projectName>;
      *          restituisce null se tale progetto non esiste */
     private Project getProject(String projectName) {
-        for (Project project : projects) {
-            if (project.getName().equals(projectName))
-                return project;
-        }
-        return null;
+        return projects.get(projectName);
     }
 
     /* EFFECTS: cerca e restituisce l'utente indicato da <nickUtente>;
      *          restituisce null se tale utente non esiste */
     private User getUser(String nickUtente) {
-        for (User user : users) {
-            if (user.getName().equals(nickUtente))
-                return user;
-        }
-        return null;
+        return users.get(nickUtente);
     }
 
-    /* EFFECTS: cerca e restituisce l'utente indicato dalla coppia <address, port>;
-     *          restituisce null se tale utente non esiste */
-    private User getUser(InetAddress address, int port) {
-        for (User user : users) {
-            if (user.getState().equals(UserState.ONLINE) && user.getAddress().equals(address) && user.getPort() == port)
-                return user;
-        }
-        return null;
+    /* EFFECTS: restituisce l'utente che ha eseguito il login sulla connessione della sessione
+     * THROWS: IllegalStateException se sulla connessione non è stato eseguito il login */
+    private static User getUser(Session session) {
+        User user = session.getUser();
+        if (user == null) throw new IllegalStateException("You are not logged in");
+        return user;
     }
 
-    /* EFFECTS: restituisce true se il l'utente indicato dalla coppia <address, port>
+    /* EFFECTS: restituisce true se il l'utente associato alla sessione
      *          ha i diritti di accesso per il progetto <projectName>, false altrimenti
-     * THROWS: - NullPointerException se il progetto non esiste */
-    private boolean hasRights (String projectName, InetAddress address, int port){
+     * THROWS: - NullPointerException se il progetto non esiste
+     *         - IllegalStateException se sulla connessione non è stato eseguito il login */
+    private boolean hasRights (String projectName, Session session){
         Project project = getProject(projectName);
         if (project == null) throw new NullPointerException("Project not found");
-        String user = getUser(address, port).getName();
-        ArrayList<String> members = project.getMembers();
-        return members.contains(user);
+        String user = getUser(session).getName();
+        return projects.isMember(user, projectName);
     }
 
-    //EFFECTS: genera un nuovo indirizzo IP multicast a partire dall'ultimo indirizzo usato
+    /* EFFECTS: crea il pool di worker che esegue i comandi dei client; la coda è limitata
+     *          e, quando è piena, il pool rifiuta i nuovi comandi (vedi Reactor) */
+    private ExecutorService newWorkerPool (){
+        AtomicInteger counter = new AtomicInteger();
+        ThreadFactory threadFactory = runnable -> {
+            Thread thread = new Thread(runnable, "worker-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        };
+        return new ThreadPoolExecutor(config.getWorkers(), config.getWorkers(), 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(config.getWorkQueue()), threadFactory, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    /* EFFECTS: genera un nuovo indirizzo IP multicast a partire dall'ultimo indirizzo usato
+     *          (da invocare sul monitor di projects, o durante il recovery) */
     private String newMulticastIP () {
         if (!oldAddress.isEmpty()) {
             String out = oldAddress.getFirst();
@@ -557,82 +594,80 @@ public class ServerWORTH {
         return out;
     }
 
-    //EFFECTS: svuota la directory di un progetto e la elimina
-    private void deleteProjectCopy (Project project){
-        File projectDir = new File("./Recovery" + File.separator + project.getName());
-        if (projectDir.exists()) {
-            File[] files = projectDir.listFiles();
-            for (File file: files) {
-                if (file.delete()) System.out.println(file.getName() + " deleted");
+    /* EFFECTS: recupera lo stato della sessione precedente dallo storage; i progetti vengono creati
+     *          nell'ordine in cui compaiono (quindi ricevono sempre gli stessi indirizzi di multicast)
+     *          e aggiunti al registro solo alla fine del recovery
+     * THROWS: IOException se si verifica un errore di I/O */
+    private void recover() throws IOException {
+        long start = System.currentTimeMillis();
+        LinkedHashMap<String, Project> restored = new LinkedHashMap<>();
+        storage.recover(new RecoveryHandler() {
+            @Override
+            public void user(User user) {
+                users.restore(user);
+            }
+
+            @Override
+            public void members(String projectName, ArrayList<String> members) {
+                restoredProject(restored, projectName).setMembers(members);
             }
-            if (projectDir.delete()) System.out.println("Directory " + project.getName() + " deleted");
-        }
-    }
 
-    /* EFFECTS: recupera lo stato della sessione precedente leggendo i contenuti della directory "Recovery"
-     * THROWS: IOException se si verifica un errore di I/O */
-    public void readJSon () throws IOException {
-        File root = new File("./Recovery");
-        if (!root.exists()) return;
-        File[] files = root.listFiles();
-        if (files == null || files.length == 0) return;
-        ObjectMapper objectMapper = new ObjectMapper();
-
-        //directory principale
-        for (File file: files){
-            if (file.isDirectory()){
-                File[] files1 = file.listFiles();
-                if (files1 == null || files1.length == 0) continue;
-
-                //directory del progetto
-                Project project = new Project(file.getName(), newMulticastIP());
-                for (File file1: files1){
-                    FileInputStream fileInputStream = new FileInputStream(file1);
-                    FileChannel inChannel = fileInputStream.getChannel();
-                    ByteBuffer buffer = ByteBuffer.allocate((int) inChannel.size());
-                    inChannel.read(buffer);
-
-                    //file dei membri del progetto
-                    if (file1.getName().equals("members.json")){
-                        project.setMembers(objectMapper.reader().forType(new TypeReference<ArrayList<String>>() {
-                        }).readValue(buffer.array()));
-                    }
-                    //file della card del progetto
-                    else{
-                        Card card = objectMapper.readValue(buffer.array(), Card.class);
-                        int lastState = card.getStory().size()-1;
-                        switch (card.getStory().get(lastState)){
-                            case ToDo:project.getToDo().add(card); break;
-                            case InProgress:project.getInProgress().add(card); break;
-                            case ToBeRevised:project.getToBeRevised().add(card); break;
-                            case Done:project.getDone().add(card); break;
-                        }
-                    }
-                    inChannel.close();
-                    fileInputStream.close();
+            @Override
+            public void card(String projectName, Card card) {
+                try {
+                    restoredProject(restored, projectName).restoreCard(card);
+                } catch (ExistingNameException e) {
+                    System.out.println("Card " + card.getName() + " duplicata");
                 }
+            }
+        });
+        for (Project project : restored.values()) {
+            try {
                 projects.add(project);
-                //file di registrazione
-            } else {
-                FileInputStream fileInputStream = new FileInputStream(file);
-                FileChannel inChannel = fileInputStream.getChannel();
-                ByteBuffer buffer = ByteBuffer.allocate((int) inChannel.size());
-                inChannel.read(buffer);
-                users.addAll (objectMapper.reader().forType(new TypeReference<ArrayList<User>>() {
-                }).readValue(buffer.array()));
-                inChannel.close();
-                fileInputStream.close();
-                for (User user : users) {
-                    user.setState(UserState.OFFLINE);
-                }
+            } catch (ExistingNameException e) {
+                System.out.println("Progetto " + project.getName() + " duplicato");
             }
         }
+        System.out.println("Recovery completato in " + (System.currentTimeMillis() - start) + " ms: "
+                + users.getUsers().size() + " utenti, " + restored.size() + " progetti");
+    }
+
+    //restituisce il progetto in fase di recovery indicato da <projectName>, creandolo se necessario
+    private Project restoredProject(LinkedHashMap<String, Project> restored, String projectName) {
+        return restored.computeIfAbsent(projectName, name -> new Project(name, newMulticastIP(), storage, sender, config.getChatHistory()));
     }
 
     //-------------------------------------------------------------------------------------//
 
                                         //FUNZIONI AUSILIARIE
 
+    /* EFFECTS: crea lo storage indicato dalla configurazione, eventualmente preceduto dallo stadio asincrono
+     * THROWS: IllegalStateException se non è possibile aprire il write-ahead log */
+    private static Storage openStorage(ServerConfig config) {
+        Storage storage;
+        if (!config.getStorage().equals("wal")) storage = new JsonStorage(config.getRecoveryThreads());
+        else {
+            try {
+                storage = new WalStorage(config);
+            } catch (IOException e) {
+                throw new IllegalStateException("Unable to open the write-ahead log", e);
+            }
+        }
+        //le modifiche vengono salvate da un thread dedicato, fuori dal percorso delle richieste
+        if (config.getFlushWindow() > 0) storage = new AsyncStorage(storage, config.getFlushWindow());
+        return storage;
+    }
+
+    /* EFFECTS: crea il mittente condiviso delle notifiche multicast
+     * THROWS: IllegalStateException se non è possibile aprire il canale */
+    private static MulticastSender openSender(ServerConfig config) {
+        try {
+            return new MulticastSender(config.getMulticastQueue(), config.getMulticastMtu(), config.getNotifyWindow());
+        } catch (IOException e) {
+            throw new IllegalStateException("Unable to open the multicast channel", e);
+        }
+    }
+
     //"ricompatta" la descrizione di una card dopo l'invocazione del metodo split()
     private static String createDescription (String[] strings){
         StringBuilder stringBuilder = new StringBuilder();
@@ -643,15 +678,33 @@ public class ServerWORTH {
 
     }
 
-    //trasforma l'insieme di utenti in un'HashMap usata per condividere solo le informazioni essenziali
-    private static HashMap<String, String> listToMap (List<User> users){
+    //-------------------------------------------------------------------------------------//
+
+    /* fabbrica dei socket RMI che limita il tempo di apertura delle connessioni, così una callback verso
+     * un client irraggiungibile non occupa un thread per tutto il timeout di connessione del sistema operativo */
+    private static class TimeoutSocketFactory extends RMISocketFactory {
+        private final int timeout;
+
+        private TimeoutSocketFactory(int timeout) {
+            this.timeout = timeout;
+        }
 
-        HashMap<String, String> usersMap = new HashMap<>();
-        for (User user: users) {
-            usersMap.put(user.getName(), user.getState().toString());
+        @Override
+        public Socket createSocket(String host, int port) throws IOException {
+            Socket socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, port), timeout);
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+            return socket;
         }
-        return usersMap;
 
+        @Override
+        public ServerSocket createServerSocket(int port) throws IOException {
+            return new ServerSocket(port);
+        }
     }
 
 }
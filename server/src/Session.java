@@ -0,0 +1,296 @@
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+
+public class Session {
+
+    /* OVERVIEW: modella lo stato di una connessione TCP tra il server e un client; la sessione
+     *           viene creata quando il canale è registrato sul selettore e resta l'attachment
+     *           della sua chiave finché la connessione non viene chiusa.
+     *           Le richieste viaggiano in frame composti da un intero (la lunghezza in byte
+     *           del messaggio) seguito dal messaggio codificato in UTF-8; in modalità pipelining
+     *           tra la lunghezza e il messaggio c'è un intero che identifica la richiesta.
+     *           I byte ricevuti vengono letti in un unico buffer per connessione, da cui vengono estratti
+     *           tutti i frame completi prima di leggere di nuovo dal canale: una raffica di richieste in
+     *           pipelining costa una read per buffer pieno, non due per frame; un frame che arriva con
+     *           più read viene ricostruito in modo incrementale.
+     *           La sessione è usata soltanto dal thread del reactor che gestisce la connessione;
+     *           a regime buffer e richieste vengono riutilizzati, senza nuove allocazioni.
+     *              - reactor: reactor che gestisce la connessione
+     *              - key: chiave del canale sul selettore del reactor
+     *              - user: utente che ha eseguito il login su questa connessione, null se nessuno;
+     *                  è usato dai worker che eseguono le richieste della sessione (una alla volta)
+     *                  e, quando la connessione viene chiusa, dal worker che esegue il logout
+     *              - maxFrame: dimensione massima (in byte) di un messaggio
+     *              - maxInFlight: numero massimo di richieste in attesa di risposta in modalità pipelining
+     *              - pipelined: true se il client può inviare più richieste senza attendere le risposte
+     *              - inbound: buffer (in scrittura) con i byte ricevuti dal client; quelli non ancora
+     *                  consumati vanno da start alla posizione. Viene ingrandito solo per contenere un frame
+     *                  più grande, e in quel caso rilasciato dopo l'uso
+     *              - start: posizione in inbound del primo byte non ancora consumato
+     *              - queued: richieste ricevute e non ancora eseguite, in ordine di arrivo
+     *              - running: true se una richiesta della sessione è in esecuzione su un worker
+     *              - free: oggetti Request già usati e pronti per una nuova richiesta
+     *              - outbound: buffer (in scrittura) con le risposte da mandare al client, in ordine;
+     *                  mantenuto tra una risposta e l'altra se è piccolo
+     *              - highWater: numero di byte in uscita oltre il quale la sessione smette di accettare
+     *                  richieste; le letture riprendono quando i byte in uscita scendono sotto la metà
+     *              - throttled: true se la sessione ha superato highWater e non si è ancora svuotata */
+
+    //i buffer più grandi di questa soglia vengono rilasciati dopo l'uso
+    private final static int RETAINED_BUFFER = 4096;
+
+    private final Reactor reactor;
+    private final SelectionKey key;
+    private User user;
+
+    private final int maxFrame;
+    private final int maxInFlight;
+    private boolean pipelined;
+
+    private ByteBuffer inbound;
+    private int start;
+
+    private final ArrayDeque<Request> queued;
+    private boolean running;
+    private final ArrayDeque<Request> free;
+
+    private ByteBuffer outbound;
+    private final int highWater;
+    private boolean throttled;
+
+                                        //METODO COSTRUTTORE
+
+    //THROWS: NullPointerException se reactor == null || key == null || config == null
+    public Session(Reactor reactor, SelectionKey key, ServerConfig config) {
+        if (reactor == null) throw new NullPointerException("Invalid reactor");
+        if (key == null) throw new NullPointerException("Invalid key");
+        if (config == null) throw new NullPointerException("Invalid configuration");
+        this.reactor = reactor;
+        this.key = key;
+        this.maxFrame = config.getMaxFrame();
+        this.maxInFlight = config.getMaxInFlight();
+        this.highWater = config.getWriteHighWater();
+        this.inbound = ByteBuffer.allocate(RETAINED_BUFFER);
+        this.queued = new ArrayDeque<>();
+        this.free = new ArrayDeque<>();
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI GETTER/SETTER
+
+    public SelectionKey getKey() { return key; }
+
+    public User getUser() { return user; }
+
+    public void setUser(User user) { this.user = user; }
+
+    public boolean isPipelined() { return pipelined; }
+
+    public boolean isRunning() { return running; }
+
+    public void setRunning(boolean running) { this.running = running; }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI D'ISTANZA
+
+    /* REQUIRES: socketChannel != null
+     * EFFECTS: restituisce il prossimo frame completo già ricevuto; se non ce n'è nessuno legge dal canale
+     *          i byte disponibili (con una sola read) e restituisce il frame, se ora è completo
+     * THROWS: - EOFException se il client ha chiuso la connessione
+     *         - IOException se si verifica un errore di I/O o se la lunghezza del frame non è valida
+     * RETURN: la richiesta se il frame è stato ricevuto interamente, null altrimenti */
+    public Request readFrame(SocketChannel socketChannel) throws IOException {
+        Request request = nextFrame();
+        if (request != null) return request;
+
+        //i byte consumati vengono eliminati solo prima di leggere, non dopo ogni frame
+        if (start > 0) {
+            inbound.flip();
+            inbound.position(start);
+            inbound.compact();
+            start = 0;
+        }
+        if (socketChannel.read(inbound) < 0) throw new EOFException("Connection closed by the client");
+        return nextFrame();
+    }
+
+    //RETURN: true se ci sono byte ricevuti e non ancora consumati (anche di un frame incompleto)
+    public boolean hasPendingInput() { return start < inbound.position(); }
+
+    /* EFFECTS: attiva la modalità pipelining: dal frame successivo ogni richiesta
+     *          (e ogni risposta) riporta il proprio identificativo */
+    public void enablePipelining() {
+        pipelined = true;
+    }
+
+    //EFFECTS: accoda una richiesta da eseguire
+    public void enqueue(Request request) {
+        if (request == null) throw new NullPointerException("Invalid request");
+        queued.addLast(request);
+    }
+
+    //RETURN: la prossima richiesta da eseguire, null se non ce ne sono
+    public Request nextRequest() { return queued.pollFirst(); }
+
+    /* REQUIRES: request != null && request.getAnswer() != null
+     * EFFECTS: codifica la risposta in coda a quelle da mandare al client e rende
+     *          l'oggetto Request disponibile per una nuova richiesta */
+    public void addReply(Request request) {
+        if (request == null) throw new NullPointerException("Invalid request");
+        String answer = request.getAnswer();
+        if (answer == null) throw new NullPointerException("Invalid answer");
+
+        int length = utf8Length(answer);
+        ensureOutbound((request.isTagged() ? 2 : 1) * Integer.BYTES + length);
+        outbound.putInt(length);
+        if (request.isTagged()) outbound.putInt(request.getId());
+        putUtf8(outbound, answer);
+        if (outbound.position() > highWater) throttled = true;
+
+        request.clear();
+        if (free.size() < maxInFlight) free.addLast(request);
+    }
+
+    /* REQUIRES: socketChannel != null
+     * EFFECTS: scrive sul canale le risposte accodate finché il buffer di invio del socket
+     *          le accetta, senza mai attendere che si liberi
+     * THROWS: IOException se si verifica un errore di I/O
+     * RETURN: true se tutte le risposte sono state scritte, false altrimenti */
+    public boolean flush(SocketChannel socketChannel) throws IOException {
+        if (!hasReplies()) return true;
+        outbound.flip();
+        socketChannel.write(outbound);
+        //i byte non scritti tornano in testa al buffer: si riprende alla prossima select
+        outbound.compact();
+
+        if (throttled && outbound.position() <= highWater / 2) throttled = false;
+        if (outbound.position() > 0) return false;
+        if (outbound.capacity() > RETAINED_BUFFER) outbound = null;
+        return true;
+    }
+
+    //RETURN: true se ci sono risposte da mandare, false altrimenti
+    public boolean hasReplies() { return outbound != null && outbound.position() > 0; }
+
+    /* RETURN: true se il reactor può leggere nuove richieste dal client: in modalità lock-step
+     *         solo quando la richiesta precedente ha avuto risposta, in modalità pipelining
+     *         finché le richieste in sospeso sono meno di maxInFlight e il client
+     *         legge le risposte (i byte in uscita non superano highWater) */
+    public boolean canRead() {
+        if (throttled) return false;
+        int inFlight = queued.size() + (running ? 1 : 0);
+        if (pipelined) return inFlight < maxInFlight;
+        return inFlight == 0 && !hasReplies();
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI AUSILIARI
+
+    /* EFFECTS: estrae da inbound il prossimo frame, se è stato ricevuto interamente; altrimenti garantisce
+     *          che inbound possa contenerlo
+     * THROWS: IOException se la lunghezza del frame non è valida
+     * RETURN: la richiesta se il frame è completo, null altrimenti */
+    private Request nextFrame() throws IOException {
+        int headerLength = (pipelined ? 2 : 1) * Integer.BYTES;
+        int available = inbound.position() - start;
+        if (available < headerLength) return null;
+        int length = inbound.getInt(start);
+        if (length < 0 || length > maxFrame) throw new IOException("Invalid frame length: " + length);
+        if (available < headerLength + length) {
+            if (inbound.capacity() < headerLength + length) {
+                ByteBuffer larger = ByteBuffer.allocate(headerLength + length);
+                inbound.flip();
+                inbound.position(start);
+                larger.put(inbound);
+                inbound = larger;
+                start = 0;
+            }
+            return null;
+        }
+
+        //decodifica solo i byte del frame
+        String message = new String(inbound.array(), start + headerLength, length, StandardCharsets.UTF_8);
+        Request request = free.pollFirst();
+        if (request == null) request = new Request(reactor, this);
+        request.prepare(pipelined ? inbound.getInt(start + Integer.BYTES) : 0, pipelined, message);
+
+        start += headerLength + length;
+        if (start == inbound.position()) {
+            start = 0;
+            if (inbound.capacity() > RETAINED_BUFFER) inbound = ByteBuffer.allocate(RETAINED_BUFFER);
+            else inbound.clear();
+        }
+        return request;
+    }
+
+    //EFFECTS: garantisce che in outbound ci sia spazio per altri <length> byte
+    private void ensureOutbound(int length) {
+        if (outbound == null) {
+            outbound = ByteBuffer.allocate(Math.max(length, RETAINED_BUFFER / 4));
+        } else if (outbound.remaining() < length) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(outbound.position() + length, 2 * outbound.capacity()));
+            outbound.flip();
+            larger.put(outbound);
+            outbound = larger;
+        }
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //FUNZIONI AUSILIARIE
+
+    /* restituisce il numero di byte della codifica UTF-8 di <string>; come in String.getBytes
+       un surrogato non accoppiato viene codificato con '?' */
+    private static int utf8Length(String string) {
+        int length = 0;
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) length++;
+            else if (c < 0x800) length += 2;
+            else if (!Character.isSurrogate(c)) length += 3;
+            else if (isSurrogatePair(string, i)) {
+                length += 4;
+                i++;
+            } else length++;
+        }
+        return length;
+    }
+
+    //codifica <string> in UTF-8 direttamente nel buffer, senza array intermedi
+    private static void putUtf8(ByteBuffer buffer, String string) {
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c < 0x80) {
+                buffer.put((byte) c);
+            } else if (c < 0x800) {
+                buffer.put((byte) (0xC0 | (c >> 6)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (!Character.isSurrogate(c)) {
+                buffer.put((byte) (0xE0 | (c >> 12)));
+                buffer.put((byte) (0x80 | ((c >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (c & 0x3F)));
+            } else if (isSurrogatePair(string, i)) {
+                int codePoint = Character.toCodePoint(c, string.charAt(++i));
+                buffer.put((byte) (0xF0 | (codePoint >> 18)));
+                buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+                buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+                buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+            } else buffer.put((byte) '?');
+        }
+    }
+
+    //restituisce true se in posizione <i> di <string> inizia una coppia di surrogati valida
+    private static boolean isSurrogatePair(String string, int i) {
+        return Character.isHighSurrogate(string.charAt(i)) && i + 1 < string.length()
+                && Character.isLowSurrogate(string.charAt(i + 1));
+    }
+
+}
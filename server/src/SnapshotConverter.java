@@ -0,0 +1,96 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+public class SnapshotConverter {
+
+    /* OVERVIEW: converte lo stato salvato del server WORTH tra il formato JSON della directory "Recovery"
+     *           e lo snapshot binario di BinarySnapshot:
+     *              java SnapshotConverter to-binary <directory di recovery> <snapshot>
+     *              java SnapshotConverter to-json <snapshot> <directory di recovery>
+     *           Lo snapshot prodotto ha generazione 0, quindi copiato in <walDir>/snapshot diventa lo
+     *           stato iniziale del write-ahead log (vedi WalStorage) */
+
+    private final static int RECOVERY_THREADS = Runtime.getRuntime().availableProcessors();
+
+    public static void main(String[] args) {
+        if (args.length != 3 || (!args[0].equals("to-binary") && !args[0].equals("to-json"))) {
+            System.out.println("Usage: java SnapshotConverter to-binary <recovery dir> <snapshot>");
+            System.out.println("       java SnapshotConverter to-json <snapshot> <recovery dir>");
+            return;
+        }
+        long start = System.currentTimeMillis();
+        try {
+            if (args[0].equals("to-binary")) toBinary(new File(args[1]), new File(args[2]));
+            else toJson(new File(args[1]), new File(args[2]));
+            System.out.println("Conversione completata in " + (System.currentTimeMillis() - start) + " ms");
+        } catch (IOException e) {
+            System.out.println("Conversione fallita: " + e.getMessage());
+        }
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //FUNZIONI AUSILIARIE
+
+    /* EFFECTS: legge la directory di recovery <root> e scrive lo stato in <snapshot>
+     * THROWS: IOException se si verifica un errore di I/O */
+    private static void toBinary(File root, File snapshot) throws IOException {
+        if (!root.isDirectory()) throw new IOException(root + " is not a directory");
+        LinkedHashMap<String, User> users = new LinkedHashMap<>();
+        LinkedHashMap<String, ArrayList<String>> members = new LinkedHashMap<>();
+        LinkedHashMap<String, LinkedHashMap<String, Card>> cards = new LinkedHashMap<>();
+
+        new JsonStorage(root, RECOVERY_THREADS).recover(new RecoveryHandler() {
+            @Override
+            public void user(User user) {
+                users.put(user.getName(), user);
+            }
+
+            @Override
+            public void members(String projectName, ArrayList<String> projectMembers) {
+                members.put(projectName, projectMembers);
+            }
+
+            @Override
+            public void card(String projectName, Card card) {
+                cards.computeIfAbsent(projectName, name -> new LinkedHashMap<>()).put(card.getName(), card);
+            }
+        });
+        //una directory senza members.json non corrisponde a nessun progetto
+        BinarySnapshot.write(snapshot, 0, users.values(), members, cards);
+        System.out.println(users.size() + " utenti e " + members.size() + " progetti scritti in " + snapshot);
+    }
+
+    /* EFFECTS: legge <snapshot> e scrive lo stato nella directory di recovery <root>, che deve essere vuota
+     * THROWS: IOException se si verifica un errore di I/O o <root> non è vuota */
+    private static void toJson(File snapshot, File root) throws IOException {
+        String[] existing = root.list();
+        if (existing != null && existing.length > 0) throw new IOException(root + " is not empty");
+        JsonStorage storage = new JsonStorage(root, RECOVERY_THREADS);
+        ArrayList<User> users = new ArrayList<>();
+        int[] projects = new int[1];
+
+        BinarySnapshot.read(snapshot, new RecoveryHandler() {
+            @Override
+            public void user(User user) {
+                users.add(user);
+            }
+
+            @Override
+            public void members(String projectName, ArrayList<String> members) {
+                storage.saveMembers(projectName, members);
+                projects[0]++;
+            }
+
+            @Override
+            public void card(String projectName, Card card) {
+                storage.saveCard(projectName, card);
+            }
+        });
+        storage.saveUsers(users);
+        System.out.println(users.size() + " utenti e " + projects[0] + " progetti scritti in " + root);
+    }
+
+}
@@ -0,0 +1,40 @@
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+
+public interface Storage {
+
+    /* OVERVIEW: modella il meccanismo di persistenza dello stato del server WORTH; ogni operazione
+     *           sostituisce (o crea) la copia persistente dell'elemento indicato, così che il
+     *           recovery ricostruisca l'ultimo stato salvato. I metodi possono essere invocati
+     *           in modo concorrente dai worker */
+
+    /* REQUIRES: user != null
+     * EFFECTS: salva le informazioni di registrazione dell'utente */
+    void saveUser(User user);
+
+    /* REQUIRES: projectName != null && members != null
+     * EFFECTS: salva la lista dei membri del progetto, creando il progetto se non esiste */
+    void saveMembers(String projectName, List<String> members);
+
+    /* REQUIRES: projectName != null && card != null
+     * EFFECTS: salva la card del progetto */
+    void saveCard(String projectName, Card card);
+
+    /* REQUIRES: projectName != null && cards != null
+     * EFFECTS: salva un insieme di card del progetto con un'unica operazione */
+    void saveCards(String projectName, Collection<Card> cards);
+
+    /* REQUIRES: projectName != null
+     * EFFECTS: elimina il progetto, i suoi membri e le sue card */
+    void deleteProject(String projectName);
+
+    /* REQUIRES: handler != null
+     * EFFECTS: ricostruisce lo stato salvato, passando a <handler> ogni utente, lista dei membri e card
+     * THROWS: IOException se si verifica un errore di I/O */
+    void recover(RecoveryHandler handler) throws IOException;
+
+    //EFFECTS: rende persistenti le modifiche non ancora salvate e rilascia le risorse
+    void close();
+
+}
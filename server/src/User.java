@@ -1,24 +1,18 @@
 import com.fasterxml.jackson.annotation.JsonIgnore;
 
-import java.net.InetAddress;
-
 public class User {
     /* OVERVIEW: modella l'utente che usa il servizio WORTH
                     - name: username dell'utente
                     - password: password dell'utente
-                    - state: stato dell'utente -> {ONLINE, OFFLINE}
-                    - address: indirizzo IP dell'host sul quale l'utente ha eseguito il login
-                    - port: numero di porta dell'host sul quale l'utente ha eseguito il login */
+                    - state: stato dell'utente -> {ONLINE, OFFLINE}; la connessione sulla quale
+                      l'utente ha eseguito il login è indicata dalla sessione (vedi Session) */
 
     private String name;
     private String password;
 
+    //letto dai thread che costruiscono le notifiche senza acquisire il monitor dell'utente
     @JsonIgnore
-    private UserState state;
-    @JsonIgnore
-    private InetAddress address;
-    @JsonIgnore
-    private int port;
+    private volatile UserState state;
 
                                         //METODI COSTRUTTORE
 
@@ -42,14 +36,6 @@ public class User {
 
     public UserState getState() { return state; }
 
-    public InetAddress getAddress() { return address; }
-
-    public int getPort() { return port; }
-
     public void setState(UserState state) { this.state = state; }
 
-    public void setAddress(InetAddress address) { this.address = address; }
-
-    public void setPort(int port) { this.port = port; }
-
 }
@@ -0,0 +1,71 @@
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class UserRegistry {
+
+    /* OVERVIEW: modella l'insieme degli utenti registrati al servizio WORTH, indicizzati per username;
+     *           è condiviso tra il gestore delle registrazioni (thread RMI) e il server (worker),
+     *           che possono accedervi in modo concorrente senza sincronizzarsi tra loro
+     *              - users: associazione <username, utente>
+     *              - storage: meccanismo di persistenza in cui vengono salvati gli utenti registrati */
+
+    private final ConcurrentHashMap<String, User> users;
+    private final Storage storage;
+
+                                        //METODO COSTRUTTORE
+
+    public UserRegistry(Storage storage) {
+        if (storage == null) throw new NullPointerException("Invalid storage");
+        this.users = new ConcurrentHashMap<>();
+        this.storage = storage;
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI D'ISTANZA
+
+    /* REQUIRES: nickUtente != null
+     * EFFECTS: cerca e restituisce l'utente indicato da <nickUtente>;
+     *          restituisce null se tale utente non esiste
+     * THROWS: NullPointerException se nickUtente == null */
+    public User get(String nickUtente) {
+        if (nickUtente == null) throw new NullPointerException("Invalid username");
+        return users.get(nickUtente);
+    }
+
+    /* REQUIRES: nickUtente != null && password != null
+     * EFFECTS: registra un nuovo utente (offline) e lo salva; se più thread registrano lo stesso
+     *          username contemporaneamente, la registrazione riesce a uno soltanto
+     * THROWS: - NullPointerException se nickUtente == null || password == null
+     *         - ExistingNameException se lo username risulta già registrato
+     * RETURN: l'utente registrato */
+    public User register(String nickUtente, String password) throws ExistingNameException {
+        User user = new User(nickUtente, password, UserState.OFFLINE);
+        if (users.putIfAbsent(nickUtente, user) != null) throw new ExistingNameException("Username already exists");
+        storage.saveUser(user);
+        return user;
+    }
+
+    /* REQUIRES: user != null
+     * EFFECTS: inserisce un utente letto dai file di recovery; l'utente risulta offline */
+    public void restore(User user) {
+        if (user == null) throw new NullPointerException("Invalid user");
+        user.setState(UserState.OFFLINE);
+        users.put(user.getName(), user);
+    }
+
+    //RETURN: gli utenti registrati
+    public Collection<User> getUsers() { return users.values(); }
+
+    /* EFFECTS: restituisce un'HashMap usata per condividere solo le informazioni essenziali
+     * RETURN: insieme delle associazioni <username, stato> */
+    public HashMap<String, String> toStateMap() {
+        HashMap<String, String> usersMap = new HashMap<>();
+        for (User user : users.values()) {
+            usersMap.put(user.getName(), user.getState().toString());
+        }
+        return usersMap;
+    }
+
+}
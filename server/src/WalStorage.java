@@ -0,0 +1,570 @@
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+public class WalStorage implements Storage, Runnable {
+
+    /* OVERVIEW: modella la persistenza dello stato del server WORTH con un write-ahead log: ogni modifica
+     *           è un record aggiunto in coda al log wal-<generazione>.log, e periodicamente lo stato
+     *           compattato (l'ultima versione di ogni utente, lista dei membri e card) viene scritto nel
+     *           file snapshot, nel formato binario di BinarySnapshot, dopo di che il log riparte da una
+     *           nuova generazione.
+     *           Ogni record ha il formato <lunghezza><crc32><tipo><campi>, dove lunghezza e crc si
+     *           riferiscono a tipo e campi; i campi sono stringhe UTF-8 precedute dalla loro lunghezza,
+     *           seguite dal contenuto JSON dell'elemento. La generazione salvata nello snapshot è la prima
+     *           generazione del log non contenuta nello snapshot.
+     *           Le scritture sono eseguite da un unico thread (group commit): i record accodati mentre
+     *           il thread scrive vengono scritti, e sincronizzati con il disco, tutti insieme.
+     *           Il recovery legge lo snapshot e riapplica i log successivi, ignorando un eventuale
+     *           record incompleto in coda (scrittura interrotta da un crash)
+     *              - dir: directory che contiene log e snapshot
+     *              - fsync: politica di sincronizzazione con il disco -> {always, interval, never};
+     *                  con always ogni modifica viene confermata solo dopo la sincronizzazione del suo gruppo
+     *              - fsyncInterval: con la politica interval, intervallo massimo (in ms) tra due sincronizzazioni
+     *              - snapshotEvery: numero di record dopo i quali viene scritto un nuovo snapshot
+     *              - pending: record in attesa di essere scritti dal thread writer
+     *              - gate: lock che rende atomici il controllo di closed e l'inserimento in pending: chi accoda
+     *                  un record prende il lock in lettura, close() lo prende in scrittura per impostare closed
+     *                  e accodare la richiesta di chiusura, così nessun record può essere accodato dopo di essa
+     *              - closed: true dalla prima invocazione di close(); da quel momento ogni modifica viene rifiutata
+     *              - terminated: completato quando il thread writer termina
+     *              - broken: true se dopo una scrittura fallita non è stato possibile riportare il log alla fine
+     *                  dell'ultimo record completo; da quel momento il thread writer termina e ogni modifica
+     *                  viene rifiutata, perché i record scritti dopo quello incompleto andrebbero persi al recovery
+     *              - users, members, cards: stato compattato (versione più recente di ogni elemento),
+     *                  usato dal recovery e per scrivere gli snapshot; modificato solo dal thread writer
+     *              - log: canale del log corrente
+     *              - generation: generazione del log corrente */
+
+    private final static String SNAPSHOT = "snapshot";
+    private final static int RECORD_HEADER = 2 * Integer.BYTES;
+    private final static int BUFFER_DIMENSION = 64 * 1024;
+
+    //tipi di record
+    private final static byte USER = 1;
+    private final static byte MEMBERS = 2;
+    private final static byte CARD = 3;
+    private final static byte DELETE_PROJECT = 4;
+
+    private final File dir;
+    private final String fsync;
+    private final long fsyncInterval;
+    private final int snapshotEvery;
+
+    private final LinkedBlockingQueue<Entry> pending;
+    private final Thread writer;
+    private final ReentrantReadWriteLock gate;
+    private boolean closed;
+    private final CompletableFuture<Void> terminated;
+    private boolean broken;
+
+    private final LinkedHashMap<String, User> users;
+    private final LinkedHashMap<String, ArrayList<String>> members;
+    private final HashMap<String, LinkedHashMap<String, Card>> cards;
+
+    private FileChannel log;
+    private long generation;
+    private int sinceSnapshot;
+    private boolean dirty;
+    private long lastSync;
+    private ByteBuffer batch;
+
+                                        //METODO COSTRUTTORE
+
+    /* REQUIRES: config != null
+     * EFFECTS: legge lo stato salvato in <config.getWalDir()> e avvia il thread che scrive il log
+     * THROWS: IOException se non è possibile leggere lo stato salvato o aprire il log */
+    public WalStorage(ServerConfig config) throws IOException {
+        if (config == null) throw new NullPointerException("Invalid configuration");
+        this.dir = new File(config.getWalDir());
+        this.fsync = config.getWalFsync();
+        this.fsyncInterval = config.getWalFsyncInterval();
+        this.snapshotEvery = config.getWalSnapshotEvery();
+        this.pending = new LinkedBlockingQueue<>();
+        this.gate = new ReentrantReadWriteLock();
+        this.terminated = new CompletableFuture<>();
+        this.users = new LinkedHashMap<>();
+        this.members = new LinkedHashMap<>();
+        this.cards = new HashMap<>();
+        this.batch = ByteBuffer.allocate(BUFFER_DIMENSION);
+
+        if (!dir.exists() && !dir.mkdirs()) throw new IOException("Unable to create " + dir);
+        replay();
+
+        this.writer = new Thread(this, "wal-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI D'INTERFACCIA
+
+    @Override
+    public void saveUser(User user) {
+        if (user == null) throw new NullPointerException("Invalid user");
+        await(enqueue(USER, user.getName(), null, user));
+    }
+
+    @Override
+    public void saveMembers(String projectName, List<String> members) {
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        if (members == null) throw new NullPointerException("Invalid members");
+        await(enqueue(MEMBERS, projectName, null, new ArrayList<>(members)));
+    }
+
+    @Override
+    public void saveCard(String projectName, Card card) {
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        if (card == null) throw new NullPointerException("Invalid card");
+        await(enqueue(CARD, projectName, card.getName(), card.copy()));
+    }
+
+    @Override
+    //EFFECTS: accoda i record di tutte le card e attende (se necessario) solo la conferma dell'ultimo
+    public void saveCards(String projectName, Collection<Card> cards) {
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        if (cards == null) throw new NullPointerException("Invalid cards");
+        Entry last = null;
+        for (Card card : cards) {
+            last = enqueue(CARD, projectName, card.getName(), card.copy());
+        }
+        if (last != null) await(last);
+    }
+
+    @Override
+    public void deleteProject(String projectName) {
+        if (projectName == null) throw new NullPointerException("Invalid project name");
+        await(enqueue(DELETE_PROJECT, projectName, null, null));
+    }
+
+    @Override
+    /* REQUIRES: da invocare all'avvio del server, prima di ogni modifica
+     * EFFECTS: passa a <handler> copie degli elementi dello stato compattato, che i progetti possono modificare */
+    public void recover(RecoveryHandler handler) {
+        if (handler == null) throw new NullPointerException("Invalid handler");
+        for (User user : users.values()) {
+            handler.user(user);
+        }
+        for (Map.Entry<String, ArrayList<String>> entry : members.entrySet()) {
+            handler.members(entry.getKey(), new ArrayList<>(entry.getValue()));
+            for (Card card : cards.get(entry.getKey()).values()) {
+                handler.card(entry.getKey(), card.copy());
+            }
+        }
+    }
+
+    @Override
+    /* EFFECTS: rifiuta ogni modifica successiva e attende che il thread writer abbia scritto e sincronizzato
+     *          tutti i record accodati; le invocazioni concorrenti attendono la stessa chiusura */
+    public void close() {
+        gate.writeLock().lock();
+        try {
+            if (!closed) {
+                closed = true;
+                pending.add(new Entry(null, (byte) 0, null, null, null));
+            }
+        } finally {
+            gate.writeLock().unlock();
+        }
+        terminated.join();
+    }
+
+    @Override
+    /* EFFECTS: scrive i record accodati a gruppi, finché lo storage non viene chiuso; quando termina
+     *          fa fallire le attese dei record rimasti in coda */
+    public void run() {
+        try {
+            writeLoop();
+        } finally {
+            try {
+                log.close();
+            } catch (IOException ignored) {}
+            //anche se il thread è stato interrotto, da qui in poi nessun record può essere accodato
+            gate.writeLock().lock();
+            try {
+                closed = true;
+            } finally {
+                gate.writeLock().unlock();
+            }
+            ArrayList<Entry> left = new ArrayList<>();
+            pending.drainTo(left);
+            complete(left, new IOException("Storage closed"));
+            terminated.complete(null);
+        }
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //METODI AUSILIARI
+
+    //EFFECTS: scrive i record accodati a gruppi, fino alla richiesta di chiusura (o a un'interruzione)
+    private void writeLoop() {
+        ArrayList<Entry> group = new ArrayList<>();
+        while (true) {
+            Entry first;
+            try {
+                //con la politica interval, se ci sono dati non sincronizzati il thread non attende oltre la scadenza
+                if (dirty && fsync.equals("interval")) {
+                    long wait = lastSync + fsyncInterval - System.currentTimeMillis();
+                    first = pending.poll(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+                } else first = pending.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+
+            boolean close = false;
+            try {
+                if (first == null) {
+                    sync();
+                    continue;
+                }
+                group.add(first);
+                pending.drainTo(group);
+                close = writeGroup(group);
+                if (fsync.equals("always") || close || (fsync.equals("interval") && System.currentTimeMillis() - lastSync >= fsyncInterval))
+                    sync();
+                complete(group, null);
+                if (!close && sinceSnapshot >= snapshotEvery) snapshot();
+            } catch (IOException e) {
+                e.printStackTrace();
+                complete(group, e);
+                close = isClose(group) || broken;
+            }
+            //la richiesta di chiusura è l'ultimo elemento accodato
+            if (close) return;
+            group.clear();
+        }
+    }
+
+    /* EFFECTS: codifica il record e lo accoda per il thread writer, insieme al valore (non più modificato)
+     *          che il thread applicherà allo stato compattato
+     * THROWS: IllegalStateException se lo storage è stato chiuso */
+    private Entry enqueue(byte type, String first, String second, Object value) {
+        Entry entry = new Entry(encode(type, first, second, toJson(type, value)), type, first, second, value);
+        if (fsync.equals("always")) entry.done = new CompletableFuture<>();
+        gate.readLock().lock();
+        try {
+            if (closed) throw new IllegalStateException("Storage closed");
+            pending.add(entry);
+        } finally {
+            gate.readLock().unlock();
+        }
+        return entry;
+    }
+
+    //EFFECTS: attende la conferma del record, se prevista dalla politica di sincronizzazione
+    private static void await(Entry entry) {
+        if (entry.done == null) return;
+        try {
+            entry.done.join();
+        } catch (RuntimeException e) {
+            System.out.println("Impossibile salvare le modifiche: " + e.getMessage());
+        }
+    }
+
+    /* EFFECTS: scrive sul log i record del gruppo con un'unica scrittura e li applica allo stato compattato;
+     *          se la scrittura fallisce tronca il log alla posizione precedente, così i gruppi successivi non
+     *          vengono accodati dietro un record incompleto (se non è possibile imposta broken)
+     * RETURN: true se il gruppo contiene la richiesta di chiusura */
+    private boolean writeGroup(List<Entry> group) throws IOException {
+        int size = 0;
+        for (Entry entry : group) {
+            if (entry.record != null) size += entry.record.length;
+        }
+        if (batch.capacity() < size) batch = ByteBuffer.allocate(size);
+        batch.clear();
+        for (Entry entry : group) {
+            if (entry.record != null) batch.put(entry.record);
+        }
+        batch.flip();
+        long start = log.position();
+        try {
+            while (batch.hasRemaining()) log.write(batch);
+        } catch (IOException e) {
+            rollback(start);
+            throw e;
+        }
+        if (size > 0) dirty = true;
+        if (batch.capacity() > 16 * BUFFER_DIMENSION) batch = ByteBuffer.allocate(BUFFER_DIMENSION);
+
+        for (Entry entry : group) {
+            if (entry.record != null) {
+                apply(entry.type, entry.first, entry.second, entry.value);
+                sinceSnapshot++;
+            }
+        }
+        return isClose(group);
+    }
+
+    //EFFECTS: elimina dal log i byte scritti dopo <position>; se non è possibile imposta broken
+    private void rollback(long position) {
+        try {
+            log.truncate(position);
+            log.position(position);
+        } catch (IOException e) {
+            System.out.println("Impossibile ripristinare il log: le modifiche non verranno più salvate");
+            broken = true;
+        }
+    }
+
+    //EFFECTS: sincronizza il log con il disco
+    private void sync() throws IOException {
+        if (dirty) log.force(false);
+        dirty = false;
+        lastSync = System.currentTimeMillis();
+    }
+
+    //restituisce true se il gruppo contiene la richiesta di chiusura
+    private static boolean isClose(List<Entry> group) {
+        for (Entry entry : group) {
+            if (entry.record == null) return true;
+        }
+        return false;
+    }
+
+    //EFFECTS: completa le attese dei record del gruppo
+    private static void complete(List<Entry> group, IOException error) {
+        for (Entry entry : group) {
+            if (entry.done == null) continue;
+            if (error == null) entry.done.complete(null);
+            else entry.done.completeExceptionally(error);
+        }
+    }
+
+    //EFFECTS: applica il valore di un record allo stato compattato
+    private void apply(byte type, String first, String second, Object value) {
+        switch (type) {
+            case USER: users.put(first, (User) value); break;
+            case MEMBERS: {
+                @SuppressWarnings("unchecked")
+                ArrayList<String> projectMembers = (ArrayList<String>) value;
+                members.put(first, projectMembers);
+                cards.computeIfAbsent(first, projectName -> new LinkedHashMap<>());
+                break;
+            }
+            case CARD: cards.computeIfAbsent(first, projectName -> new LinkedHashMap<>()).put(second, (Card) value); break;
+            case DELETE_PROJECT: {
+                members.remove(first);
+                cards.remove(first);
+                break;
+            }
+            default: throw new IllegalArgumentException("Invalid record type: " + type);
+        }
+    }
+
+    //EFFECTS: scrive lo stato compattato in un nuovo snapshot e fa ripartire il log da una nuova generazione
+    private void snapshot() throws IOException {
+        long next = generation + 1;
+        BinarySnapshot.write(new File(dir, SNAPSHOT), next, users.values(), members, cards);
+
+        //i record del log precedente sono tutti contenuti nello snapshot
+        File old = logFile(generation);
+        log.close();
+        generation = next;
+        log = openLog(generation, 0);
+        Files.deleteIfExists(old.toPath());
+        sinceSnapshot = 0;
+        dirty = false;
+    }
+
+    /* EFFECTS: ricostruisce lo stato compattato leggendo lo snapshot e i log successivi,
+     *          poi apre in scrittura il log più recente
+     * THROWS: IOException se lo snapshot non è valido o si verifica un errore di I/O */
+    private void replay() throws IOException {
+        long first = 0;
+        File snapshot = new File(dir, SNAPSHOT);
+        if (snapshot.exists()) {
+            first = BinarySnapshot.read(snapshot, new RecoveryHandler() {
+                @Override
+                public void user(User user) {
+                    apply(USER, user.getName(), null, user);
+                }
+
+                @Override
+                public void members(String projectName, ArrayList<String> members) {
+                    apply(MEMBERS, projectName, null, members);
+                }
+
+                @Override
+                public void card(String projectName, Card card) {
+                    apply(CARD, projectName, card.getName(), card);
+                }
+            });
+            sinceSnapshot = 0;
+        }
+
+        //log successivi allo snapshot, in ordine di generazione
+        TreeMap<Long, File> logs = new TreeMap<>();
+        File[] files = dir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (!name.startsWith("wal-") || !name.endsWith(".log")) continue;
+                long logGeneration = Long.parseLong(name.substring(4, name.length() - 4));
+                if (logGeneration >= first) logs.put(logGeneration, file);
+                //il log è già contenuto nello snapshot: il crash è avvenuto prima della sua eliminazione
+                else Files.deleteIfExists(file.toPath());
+            }
+        }
+
+        generation = first;
+        long validLength = 0;
+        for (Map.Entry<Long, File> entry : logs.entrySet()) {
+            generation = entry.getKey();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(entry.getValue()), BUFFER_DIMENSION))) {
+                long length = readRecords(in, entry.getValue().length());
+                validLength = length < 0 ? entry.getValue().length() : length;
+            }
+            if (validLength < entry.getValue().length())
+                System.out.println("Log " + entry.getValue().getName() + " troncato a " + validLength + " byte");
+        }
+        log = openLog(generation, validLength);
+    }
+
+    /* EFFECTS: legge e applica i record dello stream, lungo <size> byte, finché sono validi; una lunghezza
+     *          che supera i byte rimasti indica un record incompleto o danneggiato
+     * RETURN: -1 se lo stream è stato letto interamente, altrimenti il numero di byte
+     *         dei record validi (il record successivo è incompleto o danneggiato) */
+    private long readRecords(DataInputStream in, long size) throws IOException {
+        long valid = 0;
+        CRC32 crc = new CRC32();
+        while (true) {
+            int length;
+            try {
+                length = in.readInt();
+            } catch (EOFException e) {
+                return -1;
+            }
+            try {
+                int checksum = in.readInt();
+                if (length <= 0 || length > size - valid - RECORD_HEADER) return valid;
+                byte[] record = new byte[RECORD_HEADER + length];
+                in.readFully(record, RECORD_HEADER, length);
+                crc.reset();
+                crc.update(record, RECORD_HEADER, length);
+                if ((int) crc.getValue() != checksum) return valid;
+                ByteBuffer buffer = ByteBuffer.wrap(record, RECORD_HEADER, length);
+                byte type = buffer.get();
+                String first = readString(buffer);
+                String second = type == CARD ? readString(buffer) : null;
+                apply(type, first, second, decode(type, buffer));
+                sinceSnapshot++;
+                valid += record.length;
+            } catch (EOFException | IllegalArgumentException e) {
+                return valid;
+            }
+        }
+    }
+
+    //EFFECTS: apre il log della generazione indicata, scartando i byte oltre <validLength>
+    private FileChannel openLog(long logGeneration, long validLength) throws IOException {
+        FileChannel channel = FileChannel.open(logFile(logGeneration).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        channel.truncate(validLength);
+        channel.position(validLength);
+        return channel;
+    }
+
+    //restituisce il file del log della generazione indicata
+    private File logFile(long logGeneration) {
+        return new File(dir, "wal-" + logGeneration + ".log");
+    }
+
+    //restituisce il valore codificato nel contenuto JSON di un record
+    private static Object decode(byte type, ByteBuffer buffer) throws IOException {
+        int offset = buffer.arrayOffset() + buffer.position();
+        switch (type) {
+            case USER: return JsonSupport.USER_READER.readValue(buffer.array(), offset, buffer.remaining());
+            case MEMBERS: return JsonSupport.MEMBERS_READER.readValue(buffer.array(), offset, buffer.remaining());
+            case CARD: return JsonSupport.CARD_READER.readValue(buffer.array(), offset, buffer.remaining());
+            case DELETE_PROJECT: return null;
+            default: throw new IllegalArgumentException("Invalid record type: " + type);
+        }
+    }
+
+    //restituisce il contenuto JSON del valore di un record, con lo scrittore del suo tipo
+    private static byte[] toJson(byte type, Object value) {
+        try {
+            switch (type) {
+                case USER: return JsonSupport.USER_WRITER.writeValueAsBytes(value);
+                case MEMBERS: return JsonSupport.MEMBERS_WRITER.writeValueAsBytes(value);
+                case CARD: return JsonSupport.CARD_WRITER.writeValueAsBytes(value);
+                default: return new byte[0];
+            }
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Unable to serialize " + value, e);
+        }
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //FUNZIONI AUSILIARIE
+
+    //codifica un record: <lunghezza><crc32><tipo><first>[<second>]<body>
+    private static byte[] encode(byte type, String first, String second, byte[] body) {
+        byte[] firstBytes = first.getBytes(StandardCharsets.UTF_8);
+        byte[] secondBytes = second == null ? null : second.getBytes(StandardCharsets.UTF_8);
+        int length = 1 + Integer.BYTES + firstBytes.length + (secondBytes == null ? 0 : Integer.BYTES + secondBytes.length) + body.length;
+
+        ByteBuffer buffer = ByteBuffer.allocate(RECORD_HEADER + length);
+        buffer.putInt(length).putInt(0).put(type);
+        buffer.putInt(firstBytes.length).put(firstBytes);
+        if (secondBytes != null) buffer.putInt(secondBytes.length).put(secondBytes);
+        buffer.put(body);
+
+        CRC32 crc = new CRC32();
+        crc.update(buffer.array(), RECORD_HEADER, length);
+        buffer.putInt(Integer.BYTES, (int) crc.getValue());
+        return buffer.array();
+    }
+
+    //legge una stringa preceduta dalla sua lunghezza
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) throw new IllegalArgumentException("Invalid string length");
+        String string = new String(buffer.array(), buffer.arrayOffset() + buffer.position(), length, StandardCharsets.UTF_8);
+        buffer.position(buffer.position() + length);
+        return string;
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+    //record in attesa di essere scritto, con il valore da applicare allo stato compattato; record == null indica la richiesta di chiusura
+    private static class Entry {
+        private final byte[] record;
+        private final byte type;
+        private final String first;
+        private final String second;
+        private final Object value;
+        private CompletableFuture<Void> done;
+
+        private Entry(byte[] record, byte type, String first, String second, Object value) {
+            this.record = record;
+            this.type = type;
+            this.first = first;
+            this.second = second;
+            this.value = value;
+        }
+    }
+
+}
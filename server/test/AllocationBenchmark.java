@@ -0,0 +1,106 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.rmi.registry.LocateRegistry;
+
+public class AllocationBenchmark {
+
+    /* OVERVIEW: misura i byte allocati dal server per ogni richiesta nel ciclo di richiesta/risposta a regime:
+     *           avvia il server nello stesso processo con un solo reactor, crea un progetto con una card ed
+     *           esegue in sequenza, su una sola connessione, WARMUP e poi REQUESTS comandi show_card; riporta
+     *           i byte allocati per richiesta dal thread reactor e dai thread worker, letti con
+     *           com.sun.management.ThreadMXBean (JVM HotSpot). Le allocazioni del client non sono contate.
+     *           Va eseguito da una directory vuota, con il server WORTH non in esecuzione sulla stessa macchina */
+
+    private final static int WARMUP = 20000;
+    private final static int REQUESTS = 100000;
+    private final static int REGISTER_PORT = 4567;
+    private final static int TCP_PORT = 5678;
+
+    public static void main(String[] args) throws Exception {
+        if (new File("Recovery").exists()) throw new IllegalStateException("Run the benchmark from an empty directory");
+        System.setProperty("worth.reactors", "1");
+
+        ServerWORTH server = new ServerWORTH(new ServerConfig());
+        server.registerService();
+        Thread acceptor = new Thread(server::start, "acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        RegisterManagerInterface register = (RegisterManagerInterface) LocateRegistry.getRegistry(REGISTER_PORT).lookup("REGISTER-MANAGER");
+        register.register("bench", "pw");
+        Connection connection = new Connection();
+        connection.call("login bench pw");
+        connection.call("create_project bench");
+        connection.call("add_card bench c1 description");
+
+        for (int i = 0; i < WARMUP; i++) {
+            connection.call("show_card bench c1");
+        }
+        long reactor = allocated("reactor-");
+        long workers = allocated("worker-");
+        for (int i = 0; i < REQUESTS; i++) {
+            connection.call("show_card bench c1");
+        }
+        reactor = allocated("reactor-") - reactor;
+        workers = allocated("worker-") - workers;
+
+        System.out.printf("reactor: %.1f B/request, workers: %.1f B/request%n",
+                reactor / (double) REQUESTS, workers / (double) REQUESTS);
+        System.exit(0);
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //FUNZIONI AUSILIARIE
+
+    //restituisce i byte allocati finora dai thread il cui nome inizia con <prefix>
+    private static long allocated(String prefix) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith(prefix)) total += threads.getThreadAllocatedBytes(thread.getId());
+        }
+        return total;
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+    //connessione TCP al server, con richieste e risposte precedute dalla loro lunghezza
+    private static class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer header;
+
+        private Connection() throws IOException {
+            this.channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), TCP_PORT));
+            this.header = ByteBuffer.allocate(Integer.BYTES);
+        }
+
+        //EFFECTS: invia il comando e restituisce la risposta del server
+        private String call(String command) throws IOException {
+            byte[] bytes = command.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer request = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+            request.putInt(bytes.length).put(bytes).flip();
+            while (request.hasRemaining()) channel.write(request);
+
+            header.clear();
+            readFully(header);
+            ByteBuffer answer = ByteBuffer.allocate(header.getInt(0));
+            readFully(answer);
+            return new String(answer.array(), StandardCharsets.UTF_8);
+        }
+
+        private void readFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) throw new EOFException("Connection closed by the server");
+            }
+        }
+    }
+
+}
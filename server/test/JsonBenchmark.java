@@ -0,0 +1,67 @@
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+
+public class JsonBenchmark {
+
+    /* OVERVIEW: misura il costo di serializzazione di una card, cioè il lavoro JSON di ogni modifica salvata:
+     *           confronta un nuovo ObjectMapper per ogni invocazione (come facevano Project e RegisterManager)
+     *           con i writer condivisi di JsonSupport, sia producendo i byte sia scrivendo il file della card.
+     *           Per ogni caso riporta il tempo di CPU del thread e il tempo reale per operazione, dopo un
+     *           riscaldamento pari a un quinto delle operazioni misurate. Il file viene scritto in una
+     *           directory temporanea */
+
+    private final static ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws Exception {
+        Card card = new Card("c1", "some description of the card");
+        card.addToStory(CardState.InProgress);
+        File file = File.createTempFile("card", ".json");
+        file.deleteOnExit();
+
+        measure("new ObjectMapper, bytes", 20000, () -> newMapper().writeValueAsBytes(card));
+        measure("JsonSupport.CARD_FILE_WRITER, bytes", 200000, () -> JsonSupport.CARD_FILE_WRITER.writeValueAsBytes(card));
+        measure("JsonSupport.CARD_WRITER (wal), bytes", 200000, () -> JsonSupport.CARD_WRITER.writeValueAsBytes(card));
+        measure("new ObjectMapper, file", 5000, () -> newMapper().writeValue(file, card));
+        measure("JsonSupport.CARD_FILE_WRITER, file", 5000, () -> JsonSupport.CARD_FILE_WRITER.writeValue(file, card));
+        Files.deleteIfExists(file.toPath());
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //FUNZIONI AUSILIARIE
+
+    //EFFECTS: esegue <operation> <count> volte (dopo il riscaldamento) e stampa il costo medio di un'operazione
+    private static void measure(String name, int count, Operation operation) throws Exception {
+        for (int i = 0; i < count / 5; i++) {
+            operation.run();
+        }
+        long cpu = threads.getCurrentThreadCpuTime();
+        long wall = System.nanoTime();
+        for (int i = 0; i < count; i++) {
+            operation.run();
+        }
+        cpu = threads.getCurrentThreadCpuTime() - cpu;
+        wall = System.nanoTime() - wall;
+        System.out.printf("%-40s cpu %8.1f us/op   wall %8.1f us/op%n", name, cpu / 1e3 / count, wall / 1e3 / count);
+    }
+
+    //restituisce un ObjectMapper configurato come quelli creati a ogni salvataggio prima di JsonSupport
+    private static ObjectMapper newMapper() {
+        ObjectMapper mapper = new ObjectMapper();
+        mapper.enable(SerializationFeature.INDENT_OUTPUT);
+        return mapper;
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+    //operazione misurata
+    private interface Operation {
+        void run() throws Exception;
+    }
+
+}
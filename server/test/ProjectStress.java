@@ -0,0 +1,228 @@
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.rmi.registry.LocateRegistry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public class ProjectStress {
+
+    /* OVERVIEW: stress test del modello di lock per progetto (vedi Project): avvia il server nello stesso
+     *           processo, registra USERS utenti e crea PROJECTS progetti di cui tutti sono membri; poi ogni
+     *           utente esegue in parallelo, sulla propria connessione TCP, OPERATIONS operazioni casuali
+     *           (add_card, move_card, show_cards, show_card) su progetti scelti a caso. Ogni utente sposta
+     *           solo le card che ha creato, quindi sa in quale lista deve trovarsi ognuna di esse.
+     *           Al termine controlla che ogni card compaia esattamente una volta, nella lista attesa, e che
+     *           nella directory "Recovery" di ogni progetto ci sia un file per card (più quello dei membri).
+     *           Va eseguito da una directory vuota, con il server WORTH non in esecuzione sulla stessa
+     *           macchina; termina con stato 1 se un'operazione fallisce o un invariante non è rispettato */
+
+    private final static int USERS = 16;
+    private final static int PROJECTS = 8;
+    private final static int OPERATIONS = 400;
+    private final static int REGISTER_PORT = 4567;
+    private final static int TCP_PORT = 5678;
+    private final static String PASSWORD = "pw";
+    private final static String[] LISTS = {"TO DO:", "IN PROGRESS:", "TO BE REVISED:", "DONE:"};
+    private final static String[] STATES = {"todo", "inprogress", "toberevised", "done"};
+
+    private final static AtomicInteger errors = new AtomicInteger();
+
+    public static void main(String[] args) throws Exception {
+        if (new File("Recovery").exists()) throw new IllegalStateException("Run the stress test from an empty directory");
+        //salvataggio sincrono su file, così al termine dei comandi lo stato su disco è completo
+        System.setProperty("worth.storage", "json");
+        System.setProperty("worth.flushWindow", "0");
+        if (System.getProperty("worth.workers") == null) System.setProperty("worth.workers", "8");
+
+        ServerWORTH server = new ServerWORTH(new ServerConfig());
+        server.registerService();
+        Thread acceptor = new Thread(server::start, "acceptor");
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        RegisterManagerInterface register = (RegisterManagerInterface) LocateRegistry.getRegistry(REGISTER_PORT).lookup("REGISTER-MANAGER");
+        for (int user = 0; user < USERS; user++) {
+            register.register(user(user), PASSWORD);
+        }
+        Connection[] connections = new Connection[USERS];
+        for (int user = 0; user < USERS; user++) {
+            connections[user] = connect(user);
+        }
+        for (int project = 0; project < PROJECTS; project++) {
+            check(connections[0].call("create_project " + project(project)), "Project " + project(project) + " created");
+            for (int user = 1; user < USERS; user++) {
+                connections[0].call("add_member " + project(project) + " " + user(user));
+            }
+        }
+
+        //<progetto>/<card> -> lista in cui deve trovarsi la card
+        ConcurrentHashMap<String, String> expected = new ConcurrentHashMap<>();
+        ExecutorService clients = Executors.newFixedThreadPool(USERS);
+        List<Future<?>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int user = 0; user < USERS; user++) {
+            int id = user;
+            results.add(clients.submit(() -> {
+                expected.putAll(run(connections[id], id));
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        clients.shutdown();
+        System.out.printf("%d operazioni in %d ms%n", USERS * OPERATIONS, (System.nanoTime() - start) / 1000000);
+
+        int seen = 0;
+        for (int project = 0; project < PROJECTS; project++) {
+            seen += verify(connections[0], project, expected);
+        }
+        if (seen != expected.size()) fail("found " + seen + " cards, expected " + expected.size());
+
+        if (errors.get() > 0) {
+            System.out.println("FAILED: " + errors.get() + " errors");
+            System.exit(1);
+        }
+        System.out.println("INVARIANTS OK (" + seen + " cards)");
+        System.exit(0);
+    }
+
+    //-------------------------------------------------------------------------------------//
+
+                                        //FUNZIONI AUSILIARIE
+
+    /* EFFECTS: esegue OPERATIONS operazioni casuali per conto dell'utente <id>
+     * RETURN: la lista in cui deve trovarsi ogni card creata dall'utente */
+    private static Map<String, String> run(Connection connection, int id) throws IOException {
+        Random random = new Random(id);
+        List<String> mine = new ArrayList<>();
+        Map<String, String> state = new HashMap<>();
+        for (int i = 0; i < OPERATIONS; i++) {
+            String project = project(random.nextInt(PROJECTS));
+            int operation = random.nextInt(4);
+            if (operation == 0 || mine.isEmpty()) {
+                String card = "c" + id + "_" + i;
+                check(connection.call("add_card " + project + " " + card + " description"), "Card ");
+                mine.add(project + "/" + card);
+                state.put(project + "/" + card, "todo");
+            } else if (operation == 1) {
+                String key = mine.get(random.nextInt(mine.size()));
+                String from = state.get(key);
+                String to = next(from, random);
+                if (to == null) continue;
+                String[] names = key.split("/");
+                check(connection.call("move_card " + names[0] + " " + names[1] + " " + from + " " + to), "Card ");
+                state.put(key, to);
+            } else if (operation == 2) {
+                connection.call("show_cards " + project);
+            } else {
+                String[] names = mine.get(random.nextInt(mine.size())).split("/");
+                connection.call("show_card " + names[0] + " " + names[1]);
+            }
+        }
+        return state;
+    }
+
+    /* EFFECTS: controlla che ogni card di <project> compaia una sola volta, nella lista attesa, e che
+     *          il progetto abbia un file di recovery per ogni card
+     * RETURN: il numero di card del progetto */
+    private static int verify(Connection connection, int project, Map<String, String> expected) throws IOException {
+        String name = project(project);
+        HashSet<String> cards = new HashSet<>();
+        for (String line : connection.call("show_cards " + name).split("\\R")) {
+            for (int list = 0; list < LISTS.length; list++) {
+                if (!line.startsWith(LISTS[list])) continue;
+                for (String card : line.substring(LISTS[list].length()).trim().split(" ")) {
+                    if (card.isEmpty()) continue;
+                    if (!cards.add(card)) fail("card " + name + "/" + card + " listed twice");
+                    String state = expected.get(name + "/" + card);
+                    if (!STATES[list].equals(state)) fail("card " + name + "/" + card + " in " + STATES[list] + ", expected " + state);
+                }
+            }
+        }
+        File[] files = new File("Recovery", name).listFiles();
+        if (files == null || files.length != cards.size() + 1)
+            fail("project " + name + " has " + (files == null ? 0 : files.length) + " recovery files for " + cards.size() + " cards");
+        return cards.size();
+    }
+
+    //restituisce una lista in cui può essere spostata una card che si trova in <from>, null se non ce ne sono
+    private static String next(String from, Random random) {
+        switch (from) {
+            case "todo": return "inprogress";
+            case "inprogress": return random.nextBoolean() ? "toberevised" : "done";
+            case "toberevised": return random.nextBoolean() ? "inprogress" : "done";
+            default: return null;
+        }
+    }
+
+    //EFFECTS: apre una connessione al server ed esegue il login dell'utente <id>
+    private static Connection connect(int id) throws IOException {
+        Connection connection = new Connection();
+        check(connection.call("login " + user(id) + " " + PASSWORD), user(id) + " logged in");
+        return connection;
+    }
+
+    //EFFECTS: segnala un errore se la risposta non inizia con <prefix>
+    private static void check(String answer, String prefix) {
+        if (!answer.startsWith(prefix)) fail("unexpected answer: " + answer);
+    }
+
+    private static void fail(String message) {
+        System.out.println(message);
+        errors.incrementAndGet();
+    }
+
+    private static String user(int id) { return "u" + id; }
+
+    private static String project(int id) { return "sp" + id; }
+
+    //-------------------------------------------------------------------------------------//
+
+    //connessione TCP al server, con richieste e risposte precedute dalla loro lunghezza
+    private static class Connection {
+        private final SocketChannel channel;
+        private final ByteBuffer header;
+
+        private Connection() throws IOException {
+            this.channel = SocketChannel.open(new InetSocketAddress(InetAddress.getLoopbackAddress(), TCP_PORT));
+            this.header = ByteBuffer.allocate(Integer.BYTES);
+        }
+
+        //EFFECTS: invia il comando e restituisce la risposta del server
+        private String call(String command) throws IOException {
+            byte[] bytes = command.getBytes(StandardCharsets.UTF_8);
+            ByteBuffer request = ByteBuffer.allocate(Integer.BYTES + bytes.length);
+            request.putInt(bytes.length).put(bytes).flip();
+            while (request.hasRemaining()) channel.write(request);
+
+            header.clear();
+            readFully(header);
+            ByteBuffer answer = ByteBuffer.allocate(header.getInt(0));
+            readFully(answer);
+            return new String(answer.array(), StandardCharsets.UTF_8);
+        }
+
+        private void readFully(ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) {
+                if (channel.read(buffer) < 0) throw new EOFException("Connection closed by the server");
+            }
+        }
+    }
+
+}